@@ -0,0 +1,199 @@
+import java.util.Arrays;
+
+// Many games of one board size and mode advanced together, one ply per call,
+// for generating self-play data without an SOSGameLogic per game. All boards
+// live in one byte array, each in BitBoard index order so the shared
+// SOSLineTable can be used on it directly, and the rest of the state is one
+// primitive array per field indexed by game.
+//
+// The rules are those of SOSGameLogic.makeMove: a move that forms any number
+// of SOS scores one point and the mover goes again, a simple game ends at its
+// first SOS and every game ends when its board is full. A move that
+// makeMove would refuse leaves its game unchanged.
+public class BatchedGames {
+    private static final byte EMPTY = 0;
+    private static final byte S = 1;
+    private static final byte O = 2;
+
+    private final int games;
+    private final int size;
+    private final boolean simple;
+    private final int cellCount;
+    private final int stride;
+    private final int[] boardIndex;
+    private final SOSLineTable lines;
+
+    private final byte[] cells;
+    private final boolean[] blueTurn;
+    private final int[] blueScore;
+    private final int[] redScore;
+    private final int[] emptyCells;
+    private final boolean[] done;
+
+    public BatchedGames(int games, int size, boolean simple) {
+        this.games = games;
+        this.size = size;
+        this.simple = simple;
+        this.cellCount = size * size;
+        this.stride = BitBoard.bitCount(size);
+        this.lines = SOSLineTable.forSize(size);
+        this.boardIndex = new int[cellCount];
+        for (int cell = 0; cell < cellCount; cell++) {
+            boardIndex[cell] = BitBoard.indexOf(size, cell / size, cell % size);
+        }
+
+        this.cells = new byte[games * stride];
+        this.blueTurn = new boolean[games];
+        this.blueScore = new int[games];
+        this.redScore = new int[games];
+        this.emptyCells = new int[games];
+        this.done = new boolean[games];
+        resetAll();
+    }
+
+    public int getGameCount() {
+        return games;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isSimpleGame() {
+        return simple;
+    }
+
+    public void resetAll() {
+        Arrays.fill(cells, EMPTY);
+        Arrays.fill(blueTurn, true);
+        Arrays.fill(blueScore, 0);
+        Arrays.fill(redScore, 0);
+        Arrays.fill(emptyCells, cellCount);
+        Arrays.fill(done, false);
+    }
+
+    public void reset(int game) {
+        Arrays.fill(cells, game * stride, (game + 1) * stride, EMPTY);
+        blueTurn[game] = true;
+        blueScore[game] = 0;
+        redScore[game] = 0;
+        emptyCells[game] = cellCount;
+        done[game] = false;
+    }
+
+    // Action encoding: (row * size + col) << 1, plus 1 for an O.
+    public static int action(int size, int row, int col, char letter) {
+        return (row * size + col) << 1 | (letter == 'O' ? 1 : 0);
+    }
+
+    // Plays actions[g] in every game g that is not done. rewards[g] is 1 if
+    // the move formed an SOS and 0 otherwise (including games that were
+    // already done or refused the move); done[g] is whether game g is over
+    // afterwards. Returns how many moves were played.
+    public int step(int[] actions, int[] rewards, boolean[] doneAfter) {
+        int played = 0;
+        for (int g = 0; g < games; g++) {
+            rewards[g] = 0;
+            if (!done[g]) {
+                int result = play(g, actions[g]);
+                if (result >= 0) {
+                    rewards[g] = result;
+                    played++;
+                }
+            }
+            doneAfter[g] = done[g];
+        }
+        return played;
+    }
+
+    // mask[g * size * size + cell] is true where game g may move. Both
+    // letters are legal on every empty cell; a finished game has no moves.
+    public void fillLegalMask(boolean[] mask) {
+        for (int g = 0; g < games; g++) {
+            int base = g * stride;
+            int out = g * cellCount;
+            if (done[g]) {
+                Arrays.fill(mask, out, out + cellCount, false);
+                continue;
+            }
+            for (int cell = 0; cell < cellCount; cell++) {
+                mask[out + cell] = cells[base + boardIndex[cell]] == EMPTY;
+            }
+        }
+    }
+
+    public boolean isDone(int game) {
+        return done[game];
+    }
+
+    public boolean isBlueTurn(int game) {
+        return blueTurn[game];
+    }
+
+    public int getBlueScore(int game) {
+        return blueScore[game];
+    }
+
+    public int getRedScore(int game) {
+        return redScore[game];
+    }
+
+    // 'S', 'O' or '\0', as in SOSGameLogic.getBoard().
+    public char getCell(int game, int row, int col) {
+        byte letter = cells[game * stride + BitBoard.indexOf(size, row, col)];
+        return letter == S ? 'S' : letter == O ? 'O' : '\0';
+    }
+
+    // 1 if the move scored, 0 if not, -1 if it was refused.
+    private int play(int game, int action) {
+        int cell = action >> 1;
+        if (action < 0 || cell >= cellCount) {
+            return -1;
+        }
+        int base = game * stride;
+        int index = boardIndex[cell];
+        if (cells[base + index] != EMPTY) {
+            return -1;
+        }
+        byte letter = (action & 1) != 0 ? O : S;
+        cells[base + index] = letter;
+        emptyCells[game]--;
+
+        boolean formed = formsSOS(base, index, letter);
+        if (formed) {
+            if (blueTurn[game]) {
+                blueScore[game]++;
+            } else {
+                redScore[game]++;
+            }
+            if (simple) {
+                done[game] = true;
+            }
+        } else {
+            blueTurn[game] = !blueTurn[game];
+        }
+        if (emptyCells[game] == 0) {
+            done[game] = true;
+        }
+        return formed ? 1 : 0;
+    }
+
+    private boolean formsSOS(int base, int index, byte letter) {
+        if (letter == S) {
+            int[] ends = lines.ends;
+            for (int k = lines.endOffsets[index], end = lines.endOffsets[index + 1]; k < end; k += 2) {
+                if (cells[base + ends[k]] == O && cells[base + ends[k + 1]] == S) {
+                    return true;
+                }
+            }
+        } else {
+            int[] middles = lines.middles;
+            for (int k = lines.middleOffsets[index], end = lines.middleOffsets[index + 1]; k < end; k += 2) {
+                if (cells[base + middles[k]] == S && cells[base + middles[k + 1]] == S) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
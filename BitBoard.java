@@ -0,0 +1,134 @@
+import java.util.Arrays;
+
+// S and O occupancy masks, row-major with stride size + 2 and two padding
+// rows and columns around the board. Padding bits stay zero, so stepping two cells in any
+// direction from a real cell needs no bounds check and never wraps a row.
+public class BitBoard {
+    static final int PAD = 2;
+
+    private final int size;
+    private final int stride;
+    private final int words;
+    private final long[] s;
+    private final long[] o;
+    private final SOSLineTable lines;
+
+    public BitBoard(int size) {
+        this.size = size;
+        this.stride = size + PAD;
+        int bits = bitCount(size);
+        this.lines = SOSLineTable.forSize(size);
+        this.words = (bits + 63) >>> 6;
+        this.s = new long[words];
+        this.o = new long[words];
+    }
+
+    static int bitCount(int size) {
+        return (size + 2 * PAD) * (size + PAD) + PAD;
+    }
+
+    static int indexOf(int size, int row, int col) {
+        return (row + PAD) * (size + PAD) + col + PAD;
+    }
+
+    static int rowOf(int size, int index) {
+        return (index - PAD) / (size + PAD) - PAD;
+    }
+
+    static int colOf(int size, int index) {
+        return index % (size + PAD) - PAD;
+    }
+
+    public int index(int row, int col) {
+        return (row + PAD) * stride + col + PAD;
+    }
+
+    public int row(int index) {
+        return (index - PAD) / stride - PAD;
+    }
+
+    public int col(int index) {
+        return index % stride - PAD;
+    }
+
+    public SOSLineTable lines() {
+        return lines;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isS(int index) {
+        return (s[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public boolean isO(int index) {
+        return (o[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public boolean isEmpty(int index) {
+        long bit = 1L << index;
+        int w = index >>> 6;
+        return ((s[w] | o[w]) & bit) == 0;
+    }
+
+    public char get(int index) {
+        if (isS(index)) {
+            return 'S';
+        }
+        if (isO(index)) {
+            return 'O';
+        }
+        return '\0';
+    }
+
+    public void set(int index, char letter) {
+        long bit = 1L << index;
+        if (letter == 'S') {
+            s[index >>> 6] |= bit;
+        } else {
+            o[index >>> 6] |= bit;
+        }
+    }
+
+    public void clear(int index) {
+        long bit = ~(1L << index);
+        s[index >>> 6] &= bit;
+        o[index >>> 6] &= bit;
+    }
+
+    public void clearAll() {
+        Arrays.fill(s, 0L);
+        Arrays.fill(o, 0L);
+    }
+
+    public void copyFrom(BitBoard other) {
+        System.arraycopy(other.s, 0, s, 0, words);
+        System.arraycopy(other.o, 0, o, 0, words);
+    }
+
+    // Whether placing letter at index would leave an SOS one move from done.
+    public boolean opensSOS(int index, char letter) {
+        if (letter == 'S') {
+            int[] ends = lines.ends;
+            for (int k = lines.endOffsets[index], end = lines.endOffsets[index + 1]; k < end; k += 2) {
+                int middle = ends[k];
+                int far = ends[k + 1];
+                if ((isO(middle) && isEmpty(far)) || (isEmpty(middle) && isS(far))) {
+                    return true;
+                }
+            }
+        } else if (letter == 'O') {
+            int[] middles = lines.middles;
+            for (int k = lines.middleOffsets[index], end = lines.middleOffsets[index + 1]; k < end; k += 2) {
+                int first = middles[k];
+                int last = middles[k + 1];
+                if ((isS(first) && isEmpty(last)) || (isEmpty(first) && isS(last))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
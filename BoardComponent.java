@@ -0,0 +1,203 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The game board as one component. It paints the grid, the letters and a
+// line through every SOS, and turns clicks into cell coordinates. Changes
+// repaint only the cells they touch, and painting skips everything outside
+// the clip, so a move costs the same on any board size.
+public class BoardComponent extends JComponent {
+    public interface CellListener {
+        void cellClicked(int row, int col);
+    }
+
+    private static final long serialVersionUID = 1L;
+    private static final Color GRID = Color.GRAY;
+    private static final Color BLUE_LINE = new Color(70, 120, 230, 170);
+    private static final Color RED_LINE = new Color(230, 70, 70, 170);
+
+    private int size;
+    private char[][] letters;
+    private boolean[][] blueLetters;
+    // row1, col1, row2, col2, blue (1) or red (0) per line
+    private final List<int[]> lines = new ArrayList<>();
+    private CellListener listener;
+    private Font font;
+    private int fontCellSize = -1;
+
+    public BoardComponent(int size) {
+        setBackground(Color.WHITE);
+        setOpaque(true);
+        setBorder(BorderFactory.createLineBorder(Color.BLACK));
+        setBoardSize(size);
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                int row = rowAt(e.getY());
+                int col = colAt(e.getX());
+                if (listener != null && row >= 0 && col >= 0) {
+                    listener.cellClicked(row, col);
+                }
+            }
+        });
+    }
+
+    public void setCellListener(CellListener listener) {
+        this.listener = listener;
+    }
+
+    public void setBoardSize(int size) {
+        this.size = size;
+        this.letters = new char[size][size];
+        this.blueLetters = new boolean[size][size];
+        lines.clear();
+        repaint();
+    }
+
+    public int getBoardSize() {
+        return size;
+    }
+
+    public void clear() {
+        for (char[] row : letters) {
+            Arrays.fill(row, '\0');
+        }
+        lines.clear();
+        repaint();
+    }
+
+    public void setCell(int row, int col, char letter, boolean blue) {
+        letters[row][col] = letter;
+        blueLetters[row][col] = blue;
+        repaint(cellBounds(row, col, row, col));
+    }
+
+    public void addSOSLine(int row1, int col1, int row2, int col2, boolean blue) {
+        lines.add(new int[]{row1, col1, row2, col2, blue ? 1 : 0});
+        repaint(cellBounds(row1, col1, row2, col2));
+    }
+
+    public char getLetter(int row, int col) {
+        return letters[row][col];
+    }
+
+    public int getLineCount() {
+        return lines.size();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(400, 400);
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics.create();
+        try {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            if (size == 0) {
+                return;
+            }
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+            int firstRow = Math.max(0, rowIndex(clip.y));
+            int lastRow = Math.min(size - 1, rowIndex(clip.y + clip.height));
+            int firstCol = Math.max(0, colIndex(clip.x));
+            int lastCol = Math.min(size - 1, colIndex(clip.x + clip.width));
+
+            g.setFont(font(cellSize()));
+            FontMetrics metrics = g.getFontMetrics();
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    Rectangle cell = cellBounds(row, col, row, col);
+                    g.setColor(GRID);
+                    g.drawRect(cell.x, cell.y, cell.width - 1, cell.height - 1);
+                    char letter = letters[row][col];
+                    if (letter != '\0') {
+                        String text = String.valueOf(letter);
+                        g.setColor(blueLetters[row][col] ? Color.BLUE : Color.RED);
+                        g.drawString(text, cell.x + (cell.width - metrics.stringWidth(text)) / 2,
+                            cell.y + (cell.height - metrics.getHeight()) / 2 + metrics.getAscent());
+                    }
+                }
+            }
+
+            g.setStroke(new BasicStroke(Math.max(2f, cellSize() / 12f), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            for (int[] line : lines) {
+                Rectangle from = cellBounds(line[0], line[1], line[0], line[1]);
+                Rectangle to = cellBounds(line[2], line[3], line[2], line[3]);
+                Line2D.Double shape = new Line2D.Double(from.getCenterX(), from.getCenterY(), to.getCenterX(), to.getCenterY());
+                if (shape.intersects(clip)) {
+                    g.setColor(line[4] == 1 ? BLUE_LINE : RED_LINE);
+                    g.draw(shape);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private Font font(int cellSize) {
+        if (cellSize != fontCellSize) {
+            font = new Font("SansSerif", Font.BOLD, Math.max(8, cellSize * 3 / 5));
+            fontCellSize = cellSize;
+        }
+        return font;
+    }
+
+    // Cells are square and the grid is centred in the component.
+    private int cellSize() {
+        Insets insets = getInsets();
+        int width = getWidth() - insets.left - insets.right;
+        int height = getHeight() - insets.top - insets.bottom;
+        return size == 0 ? 0 : Math.max(1, Math.min(width, height) / size);
+    }
+
+    private int originX() {
+        Insets insets = getInsets();
+        return insets.left + (getWidth() - insets.left - insets.right - cellSize() * size) / 2;
+    }
+
+    private int originY() {
+        Insets insets = getInsets();
+        return insets.top + (getHeight() - insets.top - insets.bottom - cellSize() * size) / 2;
+    }
+
+    // Bounds covering every cell from (row1, col1) to (row2, col2).
+    private Rectangle cellBounds(int row1, int col1, int row2, int col2) {
+        int cell = cellSize();
+        int x = originX() + Math.min(col1, col2) * cell;
+        int y = originY() + Math.min(row1, row2) * cell;
+        return new Rectangle(x, y, (Math.abs(col2 - col1) + 1) * cell, (Math.abs(row2 - row1) + 1) * cell);
+    }
+
+    private int rowAt(int y) {
+        int row = rowIndex(y);
+        return row >= 0 && row < size ? row : -1;
+    }
+
+    private int colAt(int x) {
+        int col = colIndex(x);
+        return col >= 0 && col < size ? col : -1;
+    }
+
+    // Unbounded: points outside the grid give indexes outside 0..size-1.
+    private int rowIndex(int y) {
+        return Math.floorDiv(y - originY(), Math.max(1, cellSize()));
+    }
+
+    private int colIndex(int x) {
+        return Math.floorDiv(x - originX(), Math.max(1, cellSize()));
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.Random;
+
+// Empty cells as row * size + col, kept dense in cells[0..count) with pos
+// mapping each cell back to its slot. Removal and restore are both a single
+// swap across the live/removed boundary.
+public class FreeCellSet {
+    private final int[] cells;
+    private final int[] pos;
+    private int count;
+
+    public FreeCellSet(int capacity) {
+        this.cells = new int[capacity];
+        this.pos = new int[capacity];
+        reset();
+    }
+
+    public void reset() {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i;
+            pos[i] = i;
+        }
+        count = cells.length;
+    }
+
+    public void remove(int cell) {
+        int slot = pos[cell];
+        int last = cells[--count];
+        cells[slot] = last;
+        pos[last] = slot;
+        cells[count] = cell;
+        pos[cell] = count;
+    }
+
+    public void restore(int cell) {
+        int slot = pos[cell];
+        int first = cells[count];
+        cells[slot] = first;
+        pos[first] = slot;
+        cells[count] = cell;
+        pos[cell] = count;
+        count++;
+    }
+
+    public boolean contains(int cell) {
+        return pos[cell] < count;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int get(int i) {
+        return cells[i];
+    }
+
+    public int random(Random random) {
+        return cells[random.nextInt(count)];
+    }
+
+    public void copyFrom(FreeCellSet other) {
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        System.arraycopy(other.pos, 0, pos, 0, pos.length);
+        count = other.count;
+    }
+}
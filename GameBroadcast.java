@@ -0,0 +1,270 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Pushes one game to any number of spectators. It listens to the game and
+// keeps its own copy of the position, so publishing never reads the game and
+// a late or lagging spectator can be sent the whole position at any time.
+// Each move is encoded once and offered to every subscriber's bounded queue;
+// a subscriber whose queue is full has it emptied and replaced by a snapshot,
+// so the player's thread never waits for a spectator.
+//
+// Lines, each with a sequence number a spectator can use to drop anything
+// older than the last snapshot:
+//
+//   S seq size blueScore redScore BLUE|RED|OVER cells [r1,c1,r2,c2,B|R]...
+//   D seq row col letter B|R blueScore redScore BLUE|RED [r1,c1,r2,c2]...
+//   E seq blueScore redScore
+//   END seq
+//
+// cells is size*size characters row by row: blue letters upper case, red
+// letters lower case, '.' for empty. The bracketed groups are the first and
+// last cell of each SOS, all of them in a snapshot and the new ones in a
+// move. Undos and resets are sent as snapshots.
+public class GameBroadcast implements GameListener {
+    public static final String END = "END";
+
+    private final int capacity;
+    private Subscription[] subscribers = new Subscription[0];
+    private int size;
+    private char[] cells;
+    // first S, O and last S as row, col pairs, then 1 for blue
+    private final List<int[]> lines = new ArrayList<>();
+    private int blueScore;
+    private int redScore;
+    private boolean blueTurn = true;
+    private boolean ended;
+    private long sequence;
+    // the move being assembled, and how many SOS lines there were before it
+    private StringBuilder move;
+    private int linesBeforeMove;
+    private boolean closed;
+    private long resyncs;
+
+    public GameBroadcast(int size, int capacity) {
+        this.capacity = capacity;
+        restart(size);
+    }
+
+    // Brings a new broadcast up to date with a game that is already under
+    // way by playing its recorded moves on a private copy.
+    public static GameBroadcast follow(SOSGameLogic game, int capacity) {
+        GameBroadcast broadcast = new GameBroadcast(game.getSize(), capacity);
+        SOSGameLogic copy = SOSGameLogic.createGame(game.getSize(), game.isSimpleGame());
+        copy.setRecording(false);
+        copy.addGameListener(broadcast);
+        for (int i = 0; i < game.getRecordedMoveCount(); i++) {
+            RecordedMove recorded = game.getRecordedMove(i);
+            copy.makeMove(recorded.row, recorded.col, recorded.letter);
+        }
+        copy.removeGameListener(broadcast);
+        return broadcast;
+    }
+
+    // The first line a new subscriber receives is a snapshot.
+    public synchronized Subscription subscribe() {
+        Subscription subscription = new Subscription(this, capacity);
+        subscription.queue.offer(closed ? END + " " + sequence : snapshot());
+        if (!closed) {
+            subscribers = Arrays.copyOf(subscribers, subscribers.length + 1);
+            subscribers[subscribers.length - 1] = subscription;
+        }
+        return subscription;
+    }
+
+    public synchronized int getSubscriberCount() {
+        return subscribers.length;
+    }
+
+    // Times a subscriber fell behind and was sent a snapshot instead.
+    public synchronized long getResyncs() {
+        return resyncs;
+    }
+
+    // For a new game, possibly of a different size, in the same session.
+    public synchronized void restart(int size) {
+        this.size = size;
+        this.cells = new char[size * size];
+        clearPosition();
+        if (subscribers.length > 0) {
+            publishSnapshot();
+        }
+    }
+
+    // Sends END to every subscriber and drops them.
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        String end = END + " " + ++sequence;
+        for (Subscription subscriber : subscribers) {
+            subscriber.queue.clear();
+            subscriber.queue.offer(end);
+        }
+        subscribers = new Subscription[0];
+    }
+
+    @Override
+    public synchronized void cellPlaced(int row, int col, char letter, boolean blue) {
+        cells[row * size + col] = blue ? letter : Character.toLowerCase(letter);
+        move = new StringBuilder(48);
+        linesBeforeMove = lines.size();
+        move.append(row).append(' ').append(col).append(' ').append(letter).append(' ').append(blue ? 'B' : 'R');
+    }
+
+    @Override
+    public synchronized void sosFormed(List<int[]> coordinates, boolean blue) {
+        for (int i = 0; i + 2 < coordinates.size(); i += 3) {
+            int[] first = coordinates.get(i);
+            int[] middle = coordinates.get(i + 1);
+            int[] last = coordinates.get(i + 2);
+            lines.add(new int[]{first[0], first[1], middle[0], middle[1], last[0], last[1], blue ? 1 : 0});
+        }
+    }
+
+    @Override
+    public synchronized void scoreChanged(int blueScore, int redScore) {
+        this.blueScore = blueScore;
+        this.redScore = redScore;
+        if (move != null) {
+            // the mover scored and keeps the turn
+            publishMove();
+        }
+    }
+
+    @Override
+    public synchronized void turnChanged(boolean blueTurn) {
+        this.blueTurn = blueTurn;
+        if (move != null) {
+            publishMove();
+        } else {
+            // the end of an undo
+            publishSnapshot();
+        }
+    }
+
+    @Override
+    public synchronized void gameEnded(int blueScore, int redScore) {
+        ended = true;
+        publish("E " + ++sequence + " " + blueScore + " " + redScore);
+    }
+
+    @Override
+    public synchronized void cellCleared(int row, int col) {
+        cells[row * size + col] = '.';
+        ended = false;
+        lines.removeIf(line -> (line[0] == row && line[1] == col) || (line[2] == row && line[3] == col)
+            || (line[4] == row && line[5] == col));
+    }
+
+    @Override
+    public synchronized void gameReset() {
+        clearPosition();
+        publishSnapshot();
+    }
+
+    private void clearPosition() {
+        Arrays.fill(cells, '.');
+        lines.clear();
+        blueScore = 0;
+        redScore = 0;
+        blueTurn = true;
+        ended = false;
+        move = null;
+    }
+
+    private void publishMove() {
+        StringBuilder text = new StringBuilder(move.length() + 32);
+        text.append("D ").append(++sequence).append(' ').append(move).append(' ')
+            .append(blueScore).append(' ').append(redScore).append(' ').append(blueTurn ? "BLUE" : "RED");
+        for (int i = linesBeforeMove; i < lines.size(); i++) {
+            int[] line = lines.get(i);
+            text.append(' ').append(line[0]).append(',').append(line[1]).append(',')
+                .append(line[4]).append(',').append(line[5]);
+        }
+        move = null;
+        publish(text.toString());
+    }
+
+    private void publishSnapshot() {
+        sequence++;
+        String snapshot = snapshot();
+        for (Subscription subscriber : subscribers) {
+            subscriber.queue.clear();
+            subscriber.queue.offer(snapshot);
+        }
+    }
+
+    // One shared line for everyone; anyone without room gets a snapshot,
+    // built at most once per line.
+    private void publish(String line) {
+        String snapshot = null;
+        for (Subscription subscriber : subscribers) {
+            if (!subscriber.queue.offer(line)) {
+                if (snapshot == null) {
+                    snapshot = snapshot();
+                }
+                subscriber.queue.clear();
+                subscriber.queue.offer(snapshot);
+                subscriber.resyncs++;
+                resyncs++;
+            }
+        }
+    }
+
+    private String snapshot() {
+        StringBuilder text = new StringBuilder(cells.length + 32 + lines.size() * 12);
+        text.append("S ").append(sequence).append(' ').append(size).append(' ')
+            .append(blueScore).append(' ').append(redScore).append(' ')
+            .append(ended ? "OVER" : blueTurn ? "BLUE" : "RED").append(' ').append(cells);
+        for (int[] line : lines) {
+            text.append(' ').append(line[0]).append(',').append(line[1]).append(',')
+                .append(line[4]).append(',').append(line[5]).append(',').append(line[6] == 1 ? 'B' : 'R');
+        }
+        return text.toString();
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        for (int i = 0; i < subscribers.length; i++) {
+            if (subscribers[i] == subscription) {
+                Subscription[] shrunk = new Subscription[subscribers.length - 1];
+                System.arraycopy(subscribers, 0, shrunk, 0, i);
+                System.arraycopy(subscribers, i + 1, shrunk, i, shrunk.length - i);
+                subscribers = shrunk;
+                return;
+            }
+        }
+    }
+
+    public static final class Subscription implements AutoCloseable {
+        private final GameBroadcast broadcast;
+        private final ArrayBlockingQueue<String> queue;
+        private volatile long resyncs;
+
+        private Subscription(GameBroadcast broadcast, int capacity) {
+            this.broadcast = broadcast;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        // The next line, or null if none arrives in time.
+        public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.poll(timeout, unit);
+        }
+
+        public String take() throws InterruptedException {
+            return queue.take();
+        }
+
+        public long getResyncs() {
+            return resyncs;
+        }
+
+        @Override
+        public void close() {
+            broadcast.unsubscribe(this);
+        }
+    }
+}
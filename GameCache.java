@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// The sessions a GameServer hosts, with only the recently used games kept on
+// heap. Every session stays in the map as a small shell; its SOSGameLogic is
+// resident or spilled to a replay file in the spill directory. Residency is
+// tracked per segment in LRU order against an equal share of the memory
+// budget, so touching a game only locks its own segment. Spilled games are
+// replayed from their file by the session on the next access. A request
+// looks its session up with access, and counts one hit or miss however many
+// times it then reads the game.
+//
+// Eviction must run with no session monitor held: it takes the victim's
+// monitor and then its segment, the same order a session uses when it
+// reports an access, so the two never deadlock.
+public class GameCache {
+    private static final int SEGMENTS = 16;
+
+    private final Map<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long segmentBudget;
+    private final Path spillDirectory;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    // A null spill directory keeps everything on heap.
+    public GameCache(long budgetBytes, Path spillDirectory) throws IOException {
+        this.segmentBudget = Math.max(1, budgetBytes / SEGMENTS);
+        this.spillDirectory = spillDirectory;
+        if (spillDirectory != null) {
+            Files.createDirectories(spillDirectory);
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public void put(GameSession session) {
+        sessions.put(session.getId(), session);
+        session.attach(this);
+        resident(session.getId(), session.estimatedBytes());
+    }
+
+    // Looks a session up without counting a use of its game.
+    public GameSession get(long id) {
+        return sessions.get(id);
+    }
+
+    // Looks a session up for a request: the request's first use of the game
+    // counts as a hit, or a miss if it has to be read back from its file.
+    public GameSession access(long id) {
+        GameSession session = sessions.get(id);
+        if (session != null) {
+            session.accessed();
+        }
+        return session;
+    }
+
+    // Returns the removed session, or null if there was none.
+    public GameSession remove(long id) {
+        GameSession session = sessions.remove(id);
+        if (session == null) {
+            return null;
+        }
+        forget(segment(id), id);
+        deleteSpillFile(id);
+        return session;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public void clear() {
+        for (Long id : sessions.keySet()) {
+            remove(id);
+        }
+    }
+
+    // Spills least recently used games until every segment is within its
+    // share of the budget. Games busy with a computer turn are skipped and
+    // stay resident. Returns how many games were spilled.
+    public int evictIfOverBudget() {
+        if (spillDirectory == null) {
+            return 0;
+        }
+        int spilled = 0;
+        for (Segment segment : segments) {
+            List<Long> candidates = new ArrayList<>();
+            synchronized (segment) {
+                long excess = segment.bytes - segmentBudget;
+                for (Long id : segment.resident.keySet()) {
+                    if (excess <= 0) {
+                        break;
+                    }
+                    candidates.add(id);
+                    excess -= segment.sizes.get(id);
+                }
+            }
+            for (Long id : candidates) {
+                GameSession victim = sessions.get(id);
+                if (victim == null) {
+                    // touched while being removed
+                    forget(segment, id);
+                } else if (spill(segment, victim)) {
+                    spilled++;
+                }
+            }
+        }
+        return spilled;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Spill files that could not be written or deleted.
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getResidentBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    public int getResidentCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.resident.size();
+            }
+        }
+        return count;
+    }
+
+    // Called by a session, under its monitor, whenever its game is used.
+    // rehydrated is true when the game was just read back from its file.
+    void touched(GameSession session, long bytes, boolean rehydrated) {
+        (rehydrated ? misses : hits).increment();
+        resident(session.getId(), bytes);
+    }
+
+    // Called by a session, under its monitor, when its resident game has
+    // changed size without a request using it. Leaves the LRU order alone.
+    void resized(GameSession session, long bytes) {
+        Segment segment = segment(session.getId());
+        synchronized (segment) {
+            Long previous = segment.sizes.get(session.getId());
+            if (previous != null) {
+                segment.sizes.put(session.getId(), bytes);
+                segment.bytes += bytes - previous;
+            }
+        }
+    }
+
+    Path spillFile(long id) {
+        return spillDirectory.resolve(id + ".sos");
+    }
+
+    // Marks the game most recently used.
+    private void resident(long id, long bytes) {
+        Segment segment = segment(id);
+        synchronized (segment) {
+            segment.resident.put(id, Boolean.TRUE);
+            Long previous = segment.sizes.put(id, bytes);
+            segment.bytes += bytes - (previous == null ? 0 : previous);
+        }
+    }
+
+    private void forget(Segment segment, long id) {
+        synchronized (segment) {
+            segment.resident.remove(id);
+            Long bytes = segment.sizes.remove(id);
+            if (bytes != null) {
+                segment.bytes -= bytes;
+            }
+        }
+    }
+
+    private boolean spill(Segment segment, GameSession victim) {
+        synchronized (victim) {
+            if (!sessions.containsKey(victim.getId())) {
+                return false;
+            }
+            try {
+                if (!victim.spill(spillFile(victim.getId()))) {
+                    return false;
+                }
+            } catch (IOException e) {
+                // stays resident and is tried again on the next pass
+                failures.increment();
+                return false;
+            }
+            forget(segment, victim.getId());
+            evictions.increment();
+            return true;
+        }
+    }
+
+    private void deleteSpillFile(long id) {
+        if (spillDirectory == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spillFile(id));
+        } catch (IOException e) {
+            failures.increment();
+        }
+    }
+
+    private Segment segment(long id) {
+        return segments[Long.hashCode(id * 0x9E3779B97F4A7C15L) & (SEGMENTS - 1)];
+    }
+
+    // Resident game ids, least recently used first, and their estimated
+    // sizes, kept apart so reading or updating a size does not count as a use.
+    private static final class Segment {
+        final LinkedHashMap<Long, Boolean> resident = new LinkedHashMap<>(16, 0.75f, true);
+        final Map<Long, Long> sizes = new HashMap<>();
+        long bytes;
+    }
+}
@@ -0,0 +1,29 @@
+import java.util.List;
+
+// Receives what changed after each move, undo or reset of an SOSGameLogic,
+// on the thread that made the change, whether or not the game is recording.
+// Games with events switched off (searches, replays) send nothing, and
+// copies start with no listeners.
+public interface GameListener {
+    default void cellPlaced(int row, int col, char letter, boolean blue) {
+    }
+
+    default void cellCleared(int row, int col) {
+    }
+
+    // Three cells per SOS: first S, O, last S.
+    default void sosFormed(List<int[]> coordinates, boolean blue) {
+    }
+
+    default void scoreChanged(int blueScore, int redScore) {
+    }
+
+    default void turnChanged(boolean blueTurn) {
+    }
+
+    default void gameEnded(int blueScore, int redScore) {
+    }
+
+    default void gameReset() {
+    }
+}
@@ -0,0 +1,413 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hosts many GameSessions in one JVM behind a line-based protocol on a local
+// TCP port. Each request is one line of space-separated words and gets one
+// line back, "OK ..." or "ERR message":
+//
+//   NEW size simple|general [blueType redType]   OK id
+//   MOVE id row col S|O                          OK formed blueScore redScore BLUE|RED|OVER
+//   STATE id                                     OK blueScore redScore BLUE|RED|OVER board
+//   WAIT id [millis]                             like STATE, once a human is to move or
+//                                                a computer turn has failed
+//   CLOSE id                                     OK
+//   STATS                                        OK sessions resident residentBytes hits misses evictions failures
+//   WATCH id                                     OK, then the game as GameBroadcast lines
+//   QUIT                                         closes the connection
+//
+// The board is size*size characters row by row with '.' for empty cells.
+// Player types are PlayerType names, with or without the COMPUTER_ prefix.
+// Sessions live in a GameCache and guard their own state, so there is no
+// server-wide lock. With a spill directory, idle games beyond the cache budget
+// are written to disk after each request and read back when next used.
+// Computer turns run on a bounded pool whose full queue holds up the request
+// that wants to add to it; each connection has its own thread.
+// WATCH turns the connection into a one-way spectator stream that ends when
+// the game ends or is closed.
+//
+// java GameServer [--port N] [--ai-threads N] [--ai-queue N]
+//                 [--cache-mb N --spill-dir DIR]
+public class GameServer implements Closeable {
+    static final int MIN_SIZE = 3;
+    static final int MAX_SIZE = 12;
+    private static final long MAX_WAIT_MILLIS = 60_000;
+    private static final int SPECTATOR_QUEUE = 64;
+
+    private final GameCache sessions;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ThreadPoolExecutor computerExecutor;
+    private final ExecutorService connectionExecutor;
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+
+    public GameServer(int computerThreads, int computerQueue) throws IOException {
+        this(computerThreads, computerQueue, Long.MAX_VALUE, null);
+    }
+
+    // Games beyond cacheBytes are spilled to spillDirectory; null keeps all
+    // of them on heap.
+    public GameServer(int computerThreads, int computerQueue, long cacheBytes, Path spillDirectory) throws IOException {
+        this.sessions = new GameCache(cacheBytes, spillDirectory);
+        this.computerExecutor = new ThreadPoolExecutor(computerThreads, computerThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(computerQueue), daemonThreads("sos-server-ai"),
+            GameServer::waitForRoom);
+        this.connectionExecutor = Executors.newCachedThreadPool(daemonThreads("sos-server-connection"));
+    }
+
+    // Listens on the loopback interface; port 0 picks a free port. Returns
+    // the port in use.
+    public synchronized int start(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        acceptThread = new Thread(this::acceptConnections, "sos-server-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        return serverSocket.getLocalPort();
+    }
+
+    public GameSession createSession(int size, boolean isSimple, PlayerType blue, PlayerType red) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be between " + MIN_SIZE + " and " + MAX_SIZE);
+        }
+        GameSession session = new GameSession(nextId.getAndIncrement(), size, isSimple, blue, red, computerExecutor);
+        sessions.put(session);
+        session.scheduleComputerTurn();
+        return session;
+    }
+
+    public GameSession getSession(long id) {
+        return sessions.get(id);
+    }
+
+    public boolean closeSession(long id) {
+        GameSession session = sessions.remove(id);
+        if (session == null) {
+            return false;
+        }
+        session.closeBroadcast();
+        return true;
+    }
+
+    // The spectator feed of a game, or null if there is no such game.
+    public GameBroadcast.Subscription watch(long id) {
+        GameSession session = sessions.access(id);
+        return session == null ? null : session.getBroadcast(SPECTATOR_QUEUE).subscribe();
+    }
+
+    public GameCache getCache() {
+        return sessions;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    // Answers one protocol line. Never throws for bad input.
+    public String handle(String line) {
+        String[] words = line.trim().split("\\s+");
+        try {
+            switch (words[0].toUpperCase(Locale.ROOT)) {
+                case "NEW":
+                    return newGame(words);
+                case "MOVE":
+                    return move(words);
+                case "STATE":
+                    return "OK " + state(session(words));
+                case "WAIT":
+                    return waitForHuman(words);
+                case "CLOSE":
+                    return closeSession(id(words)) ? "OK" : "ERR no such game";
+                case "STATS":
+                    return "OK " + sessions.size() + " " + sessions.getResidentCount() + " "
+                        + sessions.getResidentBytes() + " " + sessions.getHits() + " "
+                        + sessions.getMisses() + " " + sessions.getEvictions() + " " + sessions.getFailures();
+                default:
+                    return "ERR unknown command " + words[0];
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | UncheckedIOException e) {
+            return "ERR " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERR interrupted";
+        } finally {
+            sessions.evictIfOverBudget();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        }
+        connectionExecutor.shutdownNow();
+        computerExecutor.shutdownNow();
+        sessions.clear();
+    }
+
+    private String newGame(String[] words) {
+        int size = Integer.parseInt(words[1]);
+        boolean simple = mode(words[2]);
+        PlayerType blue = words.length > 3 ? playerType(words[3]) : PlayerType.HUMAN;
+        PlayerType red = words.length > 4 ? playerType(words[4]) : PlayerType.HUMAN;
+        return "OK " + createSession(size, simple, blue, red).getId();
+    }
+
+    private String move(String[] words) {
+        GameSession session = session(words);
+        int row = Integer.parseInt(words[2]);
+        int col = Integer.parseInt(words[3]);
+        char letter = words[4].toUpperCase(Locale.ROOT).charAt(0);
+        // Not under the session's monitor: the move schedules the computer's
+        // reply, which must not be handed over while it is held.
+        GameSession.MoveReport report = session.playHumanMove(row, col, letter);
+        if (report.result == GameSession.MoveResult.ILLEGAL) {
+            return "ERR illegal move";
+        }
+        return "OK " + (report.result == GameSession.MoveResult.FORMED_SOS ? 1 : 0) + " "
+            + report.blueScore + " " + report.redScore + " "
+            + (report.gameEnded ? "OVER" : report.blueTurn ? "BLUE" : "RED");
+    }
+
+    private String waitForHuman(String[] words) throws InterruptedException {
+        GameSession session = session(words);
+        long millis = words.length > 2 ? Math.min(MAX_WAIT_MILLIS, Long.parseLong(words[2])) : MAX_WAIT_MILLIS;
+        synchronized (session) {
+            if (!session.awaitHumanTurn(millis)) {
+                return "ERR timed out";
+            }
+            if (session.getComputerTurnFailure() != null) {
+                return "ERR computer turn failed: " + session.getComputerTurnFailure().getMessage();
+            }
+            return "OK " + state(session);
+        }
+    }
+
+    private static String state(GameSession session) {
+        synchronized (session) {
+            return session.getBlueScore() + " " + session.getRedScore() + " " + turn(session)
+                + " " + session.getBoardString();
+        }
+    }
+
+    private static String turn(GameSession session) {
+        return session.isGameEnded() ? "OVER" : session.isBlueTurn() ? "BLUE" : "RED";
+    }
+
+    private GameSession session(String[] words) {
+        GameSession session = sessions.access(id(words));
+        if (session == null) {
+            throw new IllegalArgumentException("no such game");
+        }
+        return session;
+    }
+
+    private static long id(String[] words) {
+        return Long.parseLong(words[1]);
+    }
+
+    private static boolean mode(String word) {
+        switch (word.toLowerCase(Locale.ROOT)) {
+            case "simple":
+                return true;
+            case "general":
+                return false;
+            default:
+                throw new IllegalArgumentException("mode must be simple or general");
+        }
+    }
+
+    static PlayerType playerType(String word) {
+        String upper = word.toUpperCase(Locale.ROOT);
+        if (upper.equals("HUMAN")) {
+            return PlayerType.HUMAN;
+        }
+        return PlayerType.valueOf(upper.startsWith("COMPUTER_") ? upper : "COMPUTER_" + upper);
+    }
+
+    private void acceptConnections() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // closed
+                return;
+            }
+            try {
+                connectionExecutor.execute(() -> serve(socket));
+            } catch (RuntimeException e) {
+                closeQuietly(socket);
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] words = line.trim().split("\\s+");
+                if (words[0].equalsIgnoreCase("QUIT")) {
+                    break;
+                }
+                if (words[0].equalsIgnoreCase("WATCH") && stream(words, out)) {
+                    break;
+                }
+                out.write(handle(line));
+                out.write('\n');
+                // answer at once unless the client has already pipelined more
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (SocketException e) {
+            // the client went away
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e.getMessage());
+        }
+    }
+
+    // Returns false, with the connection still usable, if there is no such
+    // game.
+    private boolean stream(String[] words, BufferedWriter out) throws IOException {
+        GameBroadcast.Subscription found = null;
+        try {
+            found = watch(Long.parseLong(words[1]));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // answered below
+        }
+        if (found == null) {
+            out.write("ERR no such game\n");
+            out.flush();
+            return false;
+        }
+        try (GameBroadcast.Subscription subscription = found) {
+            out.write("OK\n");
+            out.flush();
+            while (true) {
+                String line = subscription.take();
+                // write whatever else is already queued before flushing
+                while (line != null) {
+                    out.write(line);
+                    out.write('\n');
+                    if (isLastLine(line)) {
+                        return true;
+                    }
+                    line = subscription.poll(0, TimeUnit.MILLISECONDS);
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    private static boolean isLastLine(String line) {
+        return line.startsWith("E ") || line.startsWith(GameBroadcast.END)
+            || (line.startsWith("S ") && line.split(" ", 7)[5].equals("OVER"));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+
+    // A full queue makes the submitting request wait rather than run the
+    // search itself. Only request threads submit, never the computer
+    // threads, so the queue always drains.
+    private static void waitForRoom(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Server closed");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to queue a computer turn");
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = 7777;
+        int computerThreads = Runtime.getRuntime().availableProcessors();
+        int computerQueue = 4096;
+        long cacheBytes = Long.MAX_VALUE;
+        Path spillDirectory = null;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--ai-threads":
+                    computerThreads = Integer.parseInt(value);
+                    break;
+                case "--ai-queue":
+                    computerQueue = Integer.parseInt(value);
+                    break;
+                case "--cache-mb":
+                    cacheBytes = Long.parseLong(value) << 20;
+                    break;
+                case "--spill-dir":
+                    spillDirectory = Paths.get(value);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        GameServer server = new GameServer(computerThreads, computerQueue, cacheBytes, spillDirectory);
+        System.out.println("Serving SOS games on localhost:" + server.start(port));
+        Thread.currentThread().join();
+    }
+}
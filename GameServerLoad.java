@@ -0,0 +1,223 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Load test for GameServer. Each client opens its own connection and plays
+// games one after another, Blue always picking a random empty cell and letter;
+// Red does the same unless it is a computer, in which case the client WAITs.
+// Without --port an in-process server is started on a free port. Request
+// latencies are recorded per client and merged at the end, as in Tournament.
+//
+// java GameServerLoad [--host H] [--port N] [--clients N] [--games N]
+//                     [--size N] [--mode simple|general] [--opponent TYPE]
+//                     [--ai-threads N] [--cache-mb N --spill-dir DIR]
+public class GameServerLoad {
+    private final String host;
+    private final int port;
+    private final int clients;
+    private final int gamesPerClient;
+    private final int size;
+    private final boolean simple;
+    private final PlayerType opponent;
+
+    public GameServerLoad(String host, int port, int clients, int gamesPerClient, int size, boolean simple,
+                          PlayerType opponent) {
+        this.host = host;
+        this.port = port;
+        this.clients = clients;
+        this.gamesPerClient = gamesPerClient;
+        this.size = size;
+        this.simple = simple;
+        this.opponent = opponent;
+    }
+
+    public Result run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<Result>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (int c = 0; c < clients; c++) {
+                long seed = c;
+                results.add(pool.submit(() -> playClient(new Random(seed))));
+            }
+
+            Result total = new Result();
+            for (Future<Result> result : results) {
+                try {
+                    total.merge(result.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            total.elapsedNanos = System.nanoTime() - start;
+            return total;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Result playClient(Random random) {
+        Result result = new Result();
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            char[] board = new char[size * size];
+            int[] empty = new int[size * size];
+            for (int g = 0; g < gamesPerClient; g++) {
+                String id = request(in, out, "NEW " + size + (simple ? " simple" : " general") + " HUMAN " + opponent, result)[1];
+                String turn = "BLUE";
+                Arrays.fill(board, '.');
+                while (!turn.equals("OVER")) {
+                    if (turn.equals("RED") && opponent != PlayerType.HUMAN) {
+                        String[] state = request(in, out, "WAIT " + id, result);
+                        turn = state[3];
+                        state[4].getChars(0, board.length, board, 0);
+                        continue;
+                    }
+                    int count = 0;
+                    for (int cell = 0; cell < board.length; cell++) {
+                        if (board[cell] == '.') {
+                            empty[count++] = cell;
+                        }
+                    }
+                    int cell = empty[random.nextInt(count)];
+                    char letter = random.nextBoolean() ? 'S' : 'O';
+                    String[] reply = request(in, out, "MOVE " + id + " " + cell / size + " " + cell % size + " " + letter, result);
+                    board[cell] = letter;
+                    turn = reply[4];
+                    result.moves++;
+                }
+                request(in, out, "CLOSE " + id, result);
+                result.games++;
+            }
+            out.write("QUIT\n");
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result;
+    }
+
+    private static String[] request(BufferedReader in, BufferedWriter out, String line, Result result) throws IOException {
+        long begin = System.nanoTime();
+        out.write(line);
+        out.write('\n');
+        out.flush();
+        String reply = in.readLine();
+        result.latency.record(System.nanoTime() - begin);
+        result.requests++;
+        if (reply == null || !reply.startsWith("OK")) {
+            throw new IOException(line + " failed: " + reply);
+        }
+        return reply.split(" ");
+    }
+
+    public static final class Result {
+        final Tournament.LatencyHistogram latency = new Tournament.LatencyHistogram();
+        long games;
+        long moves;
+        long requests;
+        long elapsedNanos;
+
+        void merge(Result other) {
+            latency.merge(other.latency);
+            games += other.games;
+            moves += other.moves;
+            requests += other.requests;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public void print() {
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf(Locale.ROOT, "%d games, %d moves, %d requests in %.2f s: %.0f games/s, %.0f requests/s%n",
+                games, moves, requests, seconds, games / seconds, requests / seconds);
+            System.out.printf(Locale.ROOT, "request latency p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us%n",
+                latency.percentile(50) / 1e3, latency.percentile(90) / 1e3, latency.percentile(99) / 1e3,
+                latency.percentile(99.9) / 1e3);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "localhost";
+        int port = -1;
+        int clients = 64;
+        int games = 100;
+        int size = 8;
+        boolean simple = false;
+        PlayerType opponent = PlayerType.HUMAN;
+        int computerThreads = Runtime.getRuntime().availableProcessors();
+        long cacheBytes = Long.MAX_VALUE;
+        Path spillDirectory = null;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host":
+                    host = value;
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--clients":
+                    clients = Integer.parseInt(value);
+                    break;
+                case "--games":
+                    games = Integer.parseInt(value);
+                    break;
+                case "--size":
+                    size = Integer.parseInt(value);
+                    break;
+                case "--mode":
+                    simple = value.equals("simple");
+                    break;
+                case "--opponent":
+                    opponent = GameServer.playerType(value);
+                    break;
+                case "--ai-threads":
+                    computerThreads = Integer.parseInt(value);
+                    break;
+                case "--cache-mb":
+                    cacheBytes = Long.parseLong(value) << 20;
+                    break;
+                case "--spill-dir":
+                    spillDirectory = Paths.get(value);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        if (port >= 0) {
+            new GameServerLoad(host, port, clients, games, size, simple, opponent).run().print();
+            return;
+        }
+        try (GameServer server = new GameServer(computerThreads, 4096, cacheBytes, spillDirectory)) {
+            int localPort = server.start(0);
+            new GameServerLoad("localhost", localPort, clients, games, size, simple, opponent).run().print();
+            GameCache cache = server.getCache();
+            System.out.printf(Locale.ROOT, "game cache: %d hits, %d misses, %d evictions, %d failures%n",
+                cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.getFailures());
+        }
+    }
+}
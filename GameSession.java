@@ -0,0 +1,445 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// One hosted game, the headless counterpart of the Swing window's controller.
+// All state belongs to the session and is only touched under its own monitor,
+// so sessions never contend with each other. Computer turns are played on the
+// server's executor: the move is searched on a copy without holding the
+// monitor and only applied if nobody changed the game in the meantime. No
+// search runs and nothing is handed to the executor while the monitor is
+// held, so callers must not hold it when they change the game.
+//
+// In a GameCache the game may be spilled to a replay file while idle; it is
+// replayed from there the next time anything asks for it.
+public class GameSession implements GameController {
+    private final long id;
+    private final Executor computerExecutor;
+    private final List<GameListener> listeners = new ArrayList<>();
+    // null while spilled
+    private SOSGameLogic game;
+    private int size;
+    private GameCache cache;
+    private GameBroadcast broadcast;
+    // Bumped on every change so a computer move searched on a stale copy is
+    // thrown away.
+    private long version = 0;
+    private boolean computerTurnPending = false;
+    // What stopped the last computer turn, until another one is scheduled.
+    private RuntimeException computerTurnFailure;
+    // Set by GameCache.access so the request's first use of the game counts
+    // as one hit.
+    private boolean accessPending = false;
+
+    // Nothing is played until scheduleComputerTurn() or the first move.
+    public GameSession(long id, int size, boolean isSimple, PlayerType bluePlayer, PlayerType redPlayer,
+                       Executor computerExecutor) {
+        this.id = id;
+        this.computerExecutor = computerExecutor;
+        this.game = SOSGameLogic.createGame(size, isSimple);
+        this.size = size;
+        game.setBluePlayerType(bluePlayer);
+        game.setRedPlayerType(redPlayer);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean makeMove(int row, int col, char letter) {
+        boolean formedSOS;
+        synchronized (this) {
+            formedSOS = game().makeMove(row, col, letter);
+            changed();
+        }
+        scheduleComputerTurn();
+        return formedSOS;
+    }
+
+    // Like makeMove, but refuses moves on a computer's turn. The report is
+    // taken together with the move, before any computer reply.
+    public MoveReport playHumanMove(int row, int col, char letter) {
+        MoveReport report;
+        synchronized (this) {
+            SOSGameLogic current = game();
+            if (current.isGameEnded() || current.isCurrentPlayerComputer() || !current.isValidPosition(row, col)
+                    || current.getBoard()[row][col] != '\0' || (letter != 'S' && letter != 'O')) {
+                return new MoveReport(MoveResult.ILLEGAL, current);
+            }
+            boolean formedSOS = current.makeMove(row, col, letter);
+            changed();
+            report = new MoveReport(formedSOS ? MoveResult.FORMED_SOS : MoveResult.PLAYED, current);
+        }
+        scheduleComputerTurn();
+        return report;
+    }
+
+    @Override
+    public void startNewGame(int size, boolean isSimple) {
+        synchronized (this) {
+            SOSGameLogic previous = game();
+            PlayerType blue = previous.getBluePlayerType();
+            PlayerType red = previous.getRedPlayerType();
+            game = SOSGameLogic.createGame(size, isSimple);
+            this.size = size;
+            game.setBluePlayerType(blue);
+            game.setRedPlayerType(red);
+            for (GameListener listener : listeners) {
+                game.addGameListener(listener);
+            }
+            if (broadcast != null) {
+                broadcast.restart(size);
+            }
+            changed();
+        }
+        scheduleComputerTurn();
+    }
+
+    @Override
+    public synchronized boolean isGameEnded() {
+        return game().isGameEnded();
+    }
+
+    @Override
+    public synchronized boolean isBlueTurn() {
+        return game().isBlueTurn();
+    }
+
+    @Override
+    public synchronized List<int[]> getSOSCoordinates() {
+        return game().getLastSOSCoordinates();
+    }
+
+    @Override
+    public synchronized int getBlueScore() {
+        return game().getBlueScore();
+    }
+
+    @Override
+    public synchronized int getRedScore() {
+        return game().getRedScore();
+    }
+
+    @Override
+    public void setBluePlayerType(PlayerType type) {
+        synchronized (this) {
+            game().setBluePlayerType(type);
+            changed();
+        }
+        scheduleComputerTurn();
+    }
+
+    @Override
+    public void setRedPlayerType(PlayerType type) {
+        synchronized (this) {
+            game().setRedPlayerType(type);
+            changed();
+        }
+        scheduleComputerTurn();
+    }
+
+    void setPlayer(boolean blue, Player player) {
+        synchronized (this) {
+            game().setPlayer(blue, player);
+            changed();
+        }
+        scheduleComputerTurn();
+    }
+
+    @Override
+    public synchronized boolean isCurrentPlayerComputer() {
+        return game().isCurrentPlayerComputer();
+    }
+
+    @Override
+    public Move getComputerMove() {
+        SOSGameLogic snapshot;
+        Player player;
+        synchronized (this) {
+            SOSGameLogic current = game();
+            snapshot = current.createCopy();
+            player = current.getCurrentPlayer();
+        }
+        return think(player, snapshot);
+    }
+
+    @Override
+    public CompletableFuture<Move> getComputerMoveAsync() {
+        return CompletableFuture.supplyAsync(this::getComputerMove, computerExecutor);
+    }
+
+    @Override
+    public synchronized void saveMoves(String filePath) throws IOException {
+        game().saveMoves(filePath);
+    }
+
+    @Override
+    public Replay loadReplay(String filePath) throws IOException {
+        Replay replay;
+        synchronized (this) {
+            replay = game().replayMoves(filePath);
+            changed();
+        }
+        scheduleComputerTurn();
+        return replay;
+    }
+
+    // A copy of the board; the game's own array never leaves the session.
+    @Override
+    public synchronized char[][] getBoard() {
+        char[][] board = game().getBoard();
+        char[][] copy = new char[board.length][];
+        for (int i = 0; i < board.length; i++) {
+            copy[i] = board[i].clone();
+        }
+        return copy;
+    }
+
+    @Override
+    public synchronized void addGameListener(GameListener listener) {
+        listeners.add(listener);
+        game().addGameListener(listener);
+    }
+
+    public synchronized void removeGameListener(GameListener listener) {
+        listeners.remove(listener);
+        game().removeGameListener(listener);
+    }
+
+    // Created on first use and caught up with the moves made so far.
+    public synchronized GameBroadcast getBroadcast(int queueCapacity) {
+        if (broadcast == null) {
+            broadcast = GameBroadcast.follow(game(), queueCapacity);
+            addGameListener(broadcast);
+        }
+        return broadcast;
+    }
+
+    // Ends every spectator's stream.
+    public synchronized void closeBroadcast() {
+        if (broadcast != null) {
+            broadcast.close();
+        }
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public synchronized boolean isSimpleGame() {
+        return game().isSimpleGame();
+    }
+
+    // size*size characters, row by row, '.' for an empty cell.
+    public synchronized String getBoardString() {
+        char[][] board = game().getBoard();
+        StringBuilder text = new StringBuilder(size * size);
+        for (char[] row : board) {
+            for (char cell : row) {
+                text.append(cell == '\0' ? '.' : cell);
+            }
+        }
+        return text.toString();
+    }
+
+    // Waits until a human is to move, the game is over or a computer turn
+    // has failed. Returns false on timeout.
+    public synchronized boolean awaitHumanTurn(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (!isGameEnded() && isCurrentPlayerComputer() && computerTurnFailure == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(Math.max(1, remaining / 1_000_000L));
+        }
+        return true;
+    }
+
+    // The error that stopped the last computer turn, or null. The turn is
+    // tried again after the next change to the game.
+    public synchronized RuntimeException getComputerTurnFailure() {
+        return computerTurnFailure;
+    }
+
+    public synchronized boolean isSpilled() {
+        return game == null;
+    }
+
+    // Only asked while the game is resident.
+    synchronized long estimatedBytes() {
+        return game.estimatedBytes();
+    }
+
+    synchronized void accessed() {
+        accessPending = true;
+    }
+
+    synchronized void attach(GameCache cache) {
+        this.cache = cache;
+    }
+
+    // Writes the game to file and drops it from the heap. Refused while a
+    // computer turn is queued or thinking, since that turn will need it.
+    synchronized boolean spill(Path file) throws IOException {
+        if (game == null || computerTurnPending) {
+            return false;
+        }
+        game.savePosition(file.toString());
+        game = null;
+        return true;
+    }
+
+    private SOSGameLogic game() {
+        boolean rehydrated = game == null;
+        if (rehydrated) {
+            game = restore(cache.spillFile(id));
+        }
+        if (cache != null && (rehydrated || accessPending)) {
+            accessPending = false;
+            cache.touched(this, game.estimatedBytes(), rehydrated);
+        }
+        return game;
+    }
+
+    // Plays the spilled moves again, so scores, turn and undo history come
+    // back exactly; listeners are added afterwards and see none of it.
+    private SOSGameLogic restore(Path file) {
+        try (ReplayReader reader = new ReplayReader(file.toString())) {
+            SOSGameLogic restored = SOSGameLogic.createGame(reader.getSize(), reader.isSimpleGame());
+            restored.setBluePlayerType(reader.getBluePlayerType());
+            restored.setRedPlayerType(reader.getRedPlayerType());
+            while (reader.hasNext()) {
+                RecordedMove move = reader.next();
+                restored.makeMove(move.row, move.col, move.letter);
+            }
+            for (GameListener listener : listeners) {
+                restored.addGameListener(listener);
+            }
+            Files.deleteIfExists(file);
+            return restored;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not restore game " + id, e);
+        }
+    }
+
+    // Callers schedule the computer's reply once they have let go of the
+    // monitor.
+    private void changed() {
+        version++;
+        computerTurnFailure = null;
+        notifyAll();
+        if (cache != null) {
+            // moves, a new game or new players change what the game holds
+            cache.resized(this, game.estimatedBytes());
+        }
+    }
+
+    // At most one computer turn is queued or thinking per session. The
+    // server's executor makes the caller wait for room in its queue when it
+    // is saturated, which throttles whoever is creating the load; it only
+    // rejects once shut down.
+    public void scheduleComputerTurn() {
+        synchronized (this) {
+            if (computerTurnPending) {
+                return;
+            }
+            SOSGameLogic current = game();
+            if (current.isGameEnded() || !current.isCurrentPlayerComputer()) {
+                return;
+            }
+            computerTurnPending = true;
+            computerTurnFailure = null;
+        }
+        try {
+            computerExecutor.execute(this::playComputerTurn);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                computerTurnPending = false;
+            }
+        }
+    }
+
+    // Plays computer moves until a human is to move or the game is over.
+    // The turn stays pending throughout, so nothing else is queued for this
+    // session and the game cannot be spilled; a move searched on a copy the
+    // game has since moved away from is searched again. A player that throws
+    // ends the turn, and the error is kept for getComputerTurnFailure.
+    private void playComputerTurn() {
+        try {
+            playComputerMoves();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                computerTurnFailure = e;
+                computerTurnPending = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private void playComputerMoves() {
+        while (true) {
+            SOSGameLogic snapshot;
+            Player player;
+            long expected;
+            synchronized (this) {
+                SOSGameLogic current = game();
+                if (current.isGameEnded() || !current.isCurrentPlayerComputer()) {
+                    computerTurnPending = false;
+                    return;
+                }
+                snapshot = current.createCopy();
+                player = current.getCurrentPlayer();
+                expected = version;
+            }
+
+            Move move = think(player, snapshot);
+
+            synchronized (this) {
+                if (version == expected && move != null && game.isValidPosition(move.row, move.col)
+                        && game.getBoard()[move.row][move.col] == '\0') {
+                    game.makeMove(move.row, move.col, move.letter);
+                    changed();
+                }
+            }
+        }
+    }
+
+    // A player searches for one game at a time, so a hint asked for while
+    // the session's own turn is thinking waits for it.
+    private static Move think(Player player, SOSGameLogic snapshot) {
+        synchronized (player) {
+            return player.getNextMove(snapshot);
+        }
+    }
+
+    // The outcome of a human move and the game as it stood right after it.
+    public static final class MoveReport {
+        public final MoveResult result;
+        public final int blueScore;
+        public final int redScore;
+        public final boolean gameEnded;
+        public final boolean blueTurn;
+
+        MoveReport(MoveResult result, SOSGameLogic game) {
+            this.result = result;
+            this.blueScore = game.getBlueScore();
+            this.redScore = game.getRedScore();
+            this.gameEnded = game.isGameEnded();
+            this.blueTurn = game.isBlueTurn();
+        }
+    }
+
+    public enum MoveResult {
+        ILLEGAL,
+        PLAYED,
+        FORMED_SOS
+    }
+}
@@ -0,0 +1,315 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// UCT Monte Carlo Tree Search with root parallelism: every worker grows its own
+// tree on its own copy of the game and the root visit counts are summed at the
+// end. Trees live in primitive arrays and playouts run with makeMove/undoMove,
+// so a playout allocates nothing. The arrays are only allocated by the first
+// search, sized to its playout budget, and grow when a tree outgrows them.
+// Playouts take an open SOS whenever there is one and otherwise play a random
+// move that does not set one up for the opponent.
+//
+// The workers are reused from search to search, so findBestMove is
+// synchronized: a player shared between games or threads searches once at a
+// time.
+public class MonteCarloTreeSearch {
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int NODES_PER_WORKER = 1 << 18;
+    private static final int INITIAL_NODES = 1 << 12;
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final int SAFE_MOVE_ATTEMPTS = 8;
+
+    private static ExecutorService pool;
+
+    private final int threads;
+    private final long playoutBudget;
+    private final long timeBudgetNanos;
+    private final Worker[] workers;
+    // the workers' trees as of the last search, read without waiting for one
+    private volatile long allocatedBytes;
+
+    public MonteCarloTreeSearch(int threads, long playoutBudget, long timeBudgetMillis) {
+        this.threads = Math.max(1, threads);
+        this.playoutBudget = playoutBudget;
+        this.timeBudgetNanos = timeBudgetMillis * 1_000_000L;
+        this.workers = new Worker[this.threads];
+        for (int i = 0; i < this.threads; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    private static synchronized ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(DEFAULT_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "sos-mcts");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    public synchronized Move findBestMove(SOSGameLogic game) {
+        if (game.isGameEnded() || game.getEmptyCellCount() == 0) {
+            return null;
+        }
+
+        long perWorker = playoutBudget <= 0 ? Long.MAX_VALUE : Math.max(1, playoutBudget / threads);
+        List<Future<?>> running = new ArrayList<>();
+        for (Worker worker : workers) {
+            SOSGameLogic copy = game.createCopy();
+            worker.stopped = false;
+            running.add(pool().submit(() -> worker.run(copy, perWorker, timeBudgetNanos)));
+        }
+
+        // Every worker has finished before its tree is read, even when this
+        // thread is interrupted or a worker fails; the others are told to stop.
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<?> future : running) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    stopWorkers();
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                    stopWorkers();
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+
+        int size = game.getSize();
+        long[] visits = new long[2 * size * size];
+        long bytes = 0;
+        for (Worker worker : workers) {
+            worker.addRootVisits(visits);
+            bytes += worker.allocatedBytes();
+        }
+        allocatedBytes = bytes;
+
+        int best = -1;
+        for (int move = 0; move < visits.length; move++) {
+            if (visits[move] > 0 && (best < 0 || visits[move] > visits[best])) {
+                best = move;
+            }
+        }
+        if (best < 0) {
+            // no playout finished: take the move the playouts would have
+            best = game.findSOSCell();
+            if (best < 0) {
+                best = workers[0].safeRandomMove(game, size);
+            }
+        }
+        int cell = best >>> 1;
+        return new Move(cell / size, cell % size, (best & 1) == 0 ? 'S' : 'O');
+    }
+
+    private void stopWorkers() {
+        for (Worker worker : workers) {
+            worker.stopped = true;
+        }
+    }
+
+    // Heap held by the search trees, which keep their size between moves.
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized long getPlayouts() {
+        long total = 0;
+        for (Worker worker : workers) {
+            total += worker.playouts;
+        }
+        return total;
+    }
+
+    private static final class Worker {
+        private int[] move = new int[0];
+        private int[] firstChild = new int[0];
+        private int[] childCount = new int[0];
+        private int[] visits = new int[0];
+        private double[] wins = new double[0];
+        private boolean[] blueMover = new boolean[0];
+        private int[] path = new int[0];
+        private final Random random;
+        private int nodeCount;
+        private volatile long playouts;
+        private volatile boolean stopped;
+
+        Worker(int index) {
+            this.random = new Random(System.nanoTime() ^ (index * 0x9E3779B97F4A7C15L));
+        }
+
+        // The clock starts when the worker does, so a worker that waited for
+        // a busy pool still gets its whole time budget.
+        void run(SOSGameLogic game, long budget, long timeBudgetNanos) {
+            long deadline = System.nanoTime() + timeBudgetNanos;
+            int size = game.getSize();
+            if (path.length < size * size + 2) {
+                path = new int[size * size + 2];
+            }
+            // each playout expands at most one node into at most 2 * cells children
+            long needed = 1 + 2L * size * size * Math.min(budget, NODES_PER_WORKER);
+            if (move.length < Math.min(needed, INITIAL_NODES)) {
+                resize((int) Math.min(needed, INITIAL_NODES));
+            }
+            nodeCount = 1;
+            childCount[0] = 0;
+            visits[0] = 0;
+            wins[0] = 0;
+            long done = 0;
+
+            while (done < budget && ((done & 63) != 0 || (System.nanoTime() < deadline && !stopped))) {
+                int node = 0;
+                int depth = 0;
+                path[depth++] = node;
+
+                while (childCount[node] > 0 && !game.isGameEnded()) {
+                    node = select(node);
+                    play(game, move[node], size);
+                    path[depth++] = node;
+                }
+
+                int played = depth - 1;
+                if (!game.isGameEnded() && expand(game, node, size)) {
+                    node = firstChild[node] + random.nextInt(childCount[node]);
+                    play(game, move[node], size);
+                    path[depth++] = node;
+                    played++;
+                }
+
+                played += playout(game, size);
+                double blueResult = blueResult(game);
+                for (int i = 0; i < played; i++) {
+                    game.undoMove();
+                }
+
+                for (int i = 0; i < depth; i++) {
+                    int n = path[i];
+                    visits[n]++;
+                    wins[n] += blueMover[n] ? blueResult : 1.0 - blueResult;
+                }
+                done++;
+            }
+            playouts = done;
+        }
+
+        void addRootVisits(long[] totals) {
+            for (int child = firstChild[0], end = child + childCount[0]; child < end; child++) {
+                totals[move[child]] += visits[child];
+            }
+        }
+
+        private int select(int node) {
+            double logParent = Math.log(Math.max(1, visits[node]));
+            int best = firstChild[node];
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = firstChild[node], end = child + childCount[node]; child < end; child++) {
+                if (visits[child] == 0) {
+                    return child;
+                }
+                double value = wins[child] / visits[child]
+                    + EXPLORATION * Math.sqrt(logParent / visits[child]);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        private boolean expand(SOSGameLogic game, int node, int size) {
+            int empty = game.getEmptyCellCount();
+            int needed = nodeCount + 2 * empty;
+            if (needed > move.length) {
+                if (needed > NODES_PER_WORKER) {
+                    return false;
+                }
+                resize(Math.min(NODES_PER_WORKER, Math.max(needed, move.length * 2)));
+            }
+            boolean blue = game.isBlueTurn();
+            firstChild[node] = nodeCount;
+            for (int i = 0; i < empty; i++) {
+                int cell = game.getEmptyCell(i);
+                for (int letter = 0; letter < 2; letter++) {
+                    int child = nodeCount++;
+                    move[child] = (cell << 1) | letter;
+                    blueMover[child] = blue;
+                    childCount[child] = 0;
+                    visits[child] = 0;
+                    wins[child] = 0;
+                }
+            }
+            childCount[node] = nodeCount - firstChild[node];
+            return true;
+        }
+
+        // move, firstChild, childCount and visits, wins, blueMover per node
+        long allocatedBytes() {
+            return (4 + 4 + 4 + 4 + 8 + 1) * (long) move.length + 4L * path.length;
+        }
+
+        private void resize(int nodes) {
+            move = Arrays.copyOf(move, nodes);
+            firstChild = Arrays.copyOf(firstChild, nodes);
+            childCount = Arrays.copyOf(childCount, nodes);
+            visits = Arrays.copyOf(visits, nodes);
+            wins = Arrays.copyOf(wins, nodes);
+            blueMover = Arrays.copyOf(blueMover, nodes);
+        }
+
+        private int playout(SOSGameLogic game, int size) {
+            int played = 0;
+            while (!game.isGameEnded()) {
+                int sos = game.findSOSCell();
+                if (sos < 0) {
+                    sos = safeRandomMove(game, size);
+                }
+                play(game, sos, size);
+                played++;
+            }
+            return played;
+        }
+
+        // A few random tries at a move that hands the opponent no SOS, then
+        // whatever the last try was.
+        private int safeRandomMove(SOSGameLogic game, int size) {
+            int encoded = 0;
+            for (int attempt = 0; attempt < SAFE_MOVE_ATTEMPTS; attempt++) {
+                int cell = game.getRandomEmptyCell(random);
+                int letter = random.nextInt(2);
+                encoded = (cell << 1) | letter;
+                if (!game.wouldOpenSOS(cell / size, cell % size, letter == 0 ? 'S' : 'O')) {
+                    break;
+                }
+            }
+            return encoded;
+        }
+
+        private static void play(SOSGameLogic game, int encoded, int size) {
+            int cell = encoded >>> 1;
+            game.makeMove(cell / size, cell % size, (encoded & 1) == 0 ? 'S' : 'O');
+        }
+
+        private static double blueResult(SOSGameLogic game) {
+            int diff = game.getBlueScore() - game.getRedScore();
+            return diff > 0 ? 1.0 : diff < 0 ? 0.0 : 0.5;
+        }
+    }
+}
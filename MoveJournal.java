@@ -0,0 +1,151 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Append-only journal of a game in progress. Moves are buffered in memory and
+// written with one channel write per group: every flushEveryMoves moves, or
+// once flushIntervalMillis has passed since the oldest unwritten move, so a
+// crash loses at most that window. Layout:
+//
+//   "SOSJ", version, board size, flags (1 = simple), blue type, red type,
+//   then one varint per entry until the end of the file: 0 undoes the last
+//   move, anything else is a move encoded as in MoveRecorder, plus one.
+//
+// A torn varint at the end of the file is ignored when reading.
+public class MoveJournal implements Closeable {
+    static final byte[] MAGIC = {'S', 'O', 'S', 'J'};
+    static final int VERSION = 1;
+    static final int UNDO = 0;
+    private static final int BUFFER_BYTES = 8192;
+    private static ScheduledExecutorService flusher;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final int size;
+    private final int flushEveryMoves;
+    private final long flushIntervalNanos;
+    private final ScheduledFuture<?> timer;
+    private int pendingMoves = 0;
+    private long oldestPending;
+    private IOException failure;
+    private boolean closed = false;
+
+    public MoveJournal(String filePath, int size, boolean simple, PlayerType bluePlayer, PlayerType redPlayer,
+                       int flushEveryMoves, long flushIntervalMillis) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.size = size;
+        this.flushEveryMoves = Math.max(1, flushEveryMoves);
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000L;
+
+        buffer.put(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) size);
+        buffer.put((byte) (simple ? 1 : 0));
+        buffer.put((byte) bluePlayer.ordinal());
+        buffer.put((byte) redPlayer.ordinal());
+        flush();
+
+        // Covers the quiet periods when no move arrives to trigger a flush.
+        this.timer = flushIntervalMillis > 0
+            ? flusher().scheduleWithFixedDelay(this::flushIfDue, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS)
+            : null;
+    }
+
+    private static synchronized ScheduledExecutorService flusher() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sos-journal");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return flusher;
+    }
+
+    public synchronized void append(int row, int col, char letter, boolean blue, boolean isAI) {
+        int cell = row * size + col;
+        put(((cell << 3) | (letter == 'O' ? 4 : 0) | (blue ? 2 : 0) | (isAI ? 1 : 0)) + 1);
+    }
+
+    public synchronized void undo() {
+        put(UNDO);
+    }
+
+    // Write failures cannot be thrown from makeMove, so the first one is kept,
+    // further writes are dropped and flush or close reports it.
+    public synchronized void flush() throws IOException {
+        write();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        try {
+            write();
+            if (failure == null) {
+                channel.force(false);
+            }
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void put(int value) {
+        if (closed || failure != null) {
+            return;
+        }
+        if (buffer.remaining() < 5) {
+            write();
+        }
+        MoveRecorder.putVarint(buffer, value);
+        if (pendingMoves++ == 0) {
+            oldestPending = System.nanoTime();
+        }
+        if (pendingMoves >= flushEveryMoves
+                || (flushIntervalNanos > 0 && System.nanoTime() - oldestPending >= flushIntervalNanos)) {
+            write();
+        }
+    }
+
+    private synchronized void flushIfDue() {
+        if (pendingMoves > 0 && System.nanoTime() - oldestPending >= flushIntervalNanos) {
+            write();
+        }
+    }
+
+    private void write() {
+        if (failure != null || buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        buffer.clear();
+        pendingMoves = 0;
+    }
+}
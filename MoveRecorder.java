@@ -1,40 +1,207 @@
-import java.io.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+// Records the moves of a game and saves them as a binary replay:
+//
+//   "SOSR", version, board size, flags (1 = simple), blue type, red type,
+//   move count (varint), then one varint per move:
+//   cell << 3 | isO << 2 | blue << 1 | ai, with cell = row * size + col.
+//
+// Moves take one byte on boards up to 4x4 and two up to 16x16. Files are
+// read through ReplayReader, which also accepts MoveJournal files and old
+// text replays (one comma-separated move per line).
 public class MoveRecorder {
-    private List<String> moves = new ArrayList<>();
+    static final byte[] MAGIC = {'S', 'O', 'S', 'R'};
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = MAGIC.length + 5;
+
+    // In memory: row << 16 | col << 8 | isO << 2 | blue << 1 | ai.
+    private int[] moves = new int[64];
+    private int moveCount = 0;
+    private int size = 0;
+    private boolean simple = true;
+    private PlayerType bluePlayer = PlayerType.HUMAN;
+    private PlayerType redPlayer = PlayerType.HUMAN;
+    private MoveJournal journal;
+
+    // Heap held by the recorded moves, which grow with the game.
+    long estimatedBytes() {
+        return 64 + 4L * moves.length;
+    }
+
+    public void setGameInfo(int size, boolean simple, PlayerType bluePlayer, PlayerType redPlayer) {
+        this.size = size;
+        this.simple = simple;
+        this.bluePlayer = bluePlayer;
+        this.redPlayer = redPlayer;
+    }
 
     public void recordMove(int row, int col, String playerType, String color, char letter) {
-        moves.add(row + "," + col + "," + playerType + "," + color + "," + letter);
+        boolean isAI = !playerType.equalsIgnoreCase("Player") && !playerType.equalsIgnoreCase("Human");
+        recordMove(row, col, color, letter, isAI);
     }
 
     public void recordMove(int row, int col, String color, char letter, boolean isAI) {
-        String aiOrPlayer = isAI ? "AI" : "Player";
-        moves.add(row + "," + col + "," + color + "," + letter + "," + aiOrPlayer);
+        record(row, col, letter, color.equals("Blue"), isAI);
+    }
+
+    public void record(int row, int col, char letter, boolean blue, boolean isAI) {
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, moveCount * 2);
+        }
+        moves[moveCount++] = (row << 16) | (col << 8) | (letter == 'O' ? 4 : 0)
+            | (blue ? 2 : 0) | (isAI ? 1 : 0);
+        if (journal != null) {
+            journal.append(row, col, letter, blue, isAI);
+        }
+    }
+
+    public void removeLastMove() {
+        if (moveCount > 0) {
+            moveCount--;
+            if (journal != null) {
+                journal.undo();
+            }
+        }
+    }
+
+    // Streams every move to filePath as it is recorded, starting with the
+    // moves recorded so far. Call setGameInfo first.
+    public void startJournal(String filePath, int flushEveryMoves, long flushIntervalMillis) throws IOException {
+        stopJournal();
+        MoveJournal opened = new MoveJournal(filePath, size, simple, bluePlayer, redPlayer,
+            flushEveryMoves, flushIntervalMillis);
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            opened.append(move >>> 16, (move >>> 8) & 0xFF, (move & 4) != 0 ? 'O' : 'S',
+                (move & 2) != 0, (move & 1) != 0);
+        }
+        journal = opened;
+    }
+
+    public void stopJournal() throws IOException {
+        if (journal != null) {
+            MoveJournal closing = journal;
+            journal = null;
+            closing.close();
+        }
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public RecordedMove getMove(int index) {
+        return unpack(moves[index]);
+    }
+
+    // The file encoding of a move: cell << 3 | isO << 2 | blue << 1 | ai.
+    int encodedMove(int index, int boardSize) {
+        int move = moves[index];
+        int cell = (move >>> 16) * boardSize + ((move >>> 8) & 0xFF);
+        return (cell << 3) | (move & 7);
     }
 
     public void saveToFile(String filePath) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (String move : moves) {
-                writer.write(move);
-                writer.newLine();
+        int boardSize = size;
+        for (int i = 0; i < moveCount; i++) {
+            boardSize = Math.max(boardSize, Math.max(moves[i] >>> 16, (moves[i] >>> 8) & 0xFF) + 1);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 5 + moveCount * 5);
+        buffer.put(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) boardSize);
+        buffer.put((byte) (simple ? 1 : 0));
+        buffer.put((byte) bluePlayer.ordinal());
+        buffer.put((byte) redPlayer.ordinal());
+        putVarint(buffer, moveCount);
+        for (int i = 0; i < moveCount; i++) {
+            putVarint(buffer, encodedMove(i, boardSize));
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
             }
         }
     }
 
-    public List<String> loadFromFile(String filePath) throws IOException {
-        List<String> loadedMoves = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                loadedMoves.add(line);
+    // The old one-move-per-line text format, for tools that still read it.
+    public void exportToText(String filePath) throws IOException {
+        StringBuilder text = new StringBuilder(moveCount * 16);
+        for (int i = 0; i < moveCount; i++) {
+            text.append(unpack(moves[i])).append(System.lineSeparator());
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(text.toString());
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public Replay loadFromFile(String filePath) throws IOException {
+        try (ReplayReader reader = new ReplayReader(filePath)) {
+            List<RecordedMove> loaded = new ArrayList<>();
+            int boardSize = reader.getSize();
+            while (reader.hasNext()) {
+                RecordedMove move = reader.next();
+                loaded.add(move);
+                boardSize = Math.max(boardSize, Math.max(move.row, move.col) + 1);
             }
+            return new Replay(boardSize, reader.isSimpleGame(), reader.getBluePlayerType(),
+                reader.getRedPlayerType(), loaded);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return loadedMoves;
+    }
+
+    public long appendTo(ReplayArchiveWriter archive, int blueScore, int redScore) throws IOException {
+        int[] encoded = new int[moveCount];
+        for (int i = 0; i < moveCount; i++) {
+            encoded[i] = encodedMove(i, size);
+        }
+        return archive.append(size, simple, bluePlayer, redPlayer, blueScore, redScore, encoded, moveCount);
     }
 
     public void clear() {
-        moves.clear();
+        moveCount = 0;
+    }
+
+    private static RecordedMove unpack(int move) {
+        return new RecordedMove(move >>> 16, (move >>> 8) & 0xFF, (move & 4) != 0 ? 'O' : 'S',
+            (move & 2) != 0, (move & 1) != 0);
+    }
+
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
     }
 }
@@ -0,0 +1,334 @@
+import java.util.Arrays;
+
+// Negamax with alpha-beta pruning and iterative deepening over the live game,
+// using makeMove/undoMove. Scoring an SOS keeps the turn, so a child where the
+// same side is still to move is searched with the window unchanged and its
+// value is not negated. Positions are cached in an optional transposition
+// table keyed by SOSGameLogic.getHash(); subtrees that reached the end of the
+// game on every line are stored as solved and reused at any depth.
+//
+// The search state lives in the instance, so one search runs at a time:
+// findBestMove is synchronized and a player shared between games or threads
+// simply waits its turn. Use one instance per thread to search in parallel.
+public class NegamaxSearch {
+    static final int WIN = 1_000_000;
+    private static final int SCORE_WEIGHT = 1000;
+    private static final int THREAT_WEIGHT = 100;
+    private static final int CHECK_INTERVAL = 1023;
+    private static final int SOLVED_DEPTH = 255;
+
+    private final long timeBudgetNanos;
+    private final long nodeBudget;
+    private final TranspositionTable table;
+
+    private SOSGameLogic game;
+    private int size;
+    private int[] cellOrder;
+    private int[][] moves;
+    private int[][] pv;
+    private int[] pvLength;
+    private int[] previousPv;
+    private int previousPvLength;
+    private long deadline;
+    private long nodes;
+    private boolean aborted;
+    private boolean depthLimited;
+    private boolean canAbort;
+    private int completedDepth;
+    private int generation;
+    // what prepare allocated, read without waiting for a search
+    private volatile long allocatedBytes;
+
+    public NegamaxSearch(long timeBudgetMillis, long nodeBudget) {
+        this(timeBudgetMillis, nodeBudget, null);
+    }
+
+    public NegamaxSearch(long timeBudgetMillis, long nodeBudget, TranspositionTable table) {
+        this.timeBudgetNanos = timeBudgetMillis * 1_000_000L;
+        this.nodeBudget = nodeBudget;
+        this.table = table;
+    }
+
+    public synchronized Move findBestMove(SOSGameLogic game) {
+        if (game.isGameEnded() || game.getEmptyCellCount() == 0) {
+            return null;
+        }
+
+        // The search plays on the live game; its moves are neither recorded
+        // nor seen by the game's listeners.
+        boolean recording = game.isRecording();
+        boolean eventsEnabled = game.areEventsEnabled();
+        game.setRecording(false);
+        game.setEventsEnabled(false);
+        try {
+            prepare(game);
+            deadline = System.nanoTime() + timeBudgetNanos;
+            nodes = 0;
+            aborted = false;
+            previousPvLength = 0;
+            completedDepth = 0;
+            if (table != null) {
+                generation = table.newSearch();
+            }
+
+            int bestMove = -1;
+            int maxDepth = game.getEmptyCellCount();
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                depthLimited = false;
+                canAbort = depth > 1;
+                search(depth, 0, -WIN * 2, WIN * 2, previousPvLength > 0);
+                if (aborted) {
+                    break;
+                }
+
+                bestMove = pv[0][0];
+                previousPvLength = pvLength[0];
+                System.arraycopy(pv[0], 0, previousPv, 0, previousPvLength);
+                completedDepth = depth;
+
+                if (!depthLimited) {
+                    break;
+                }
+            }
+            return toMove(bestMove);
+        } finally {
+            game.setRecording(recording);
+            game.setEventsEnabled(eventsEnabled);
+            this.game = null;
+        }
+    }
+
+    public synchronized long getNodes() {
+        return nodes;
+    }
+
+    public synchronized int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    // Heap held by the per-size buffers, which are kept between moves. The
+    // transposition table is not counted, since it is usually shared.
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    private void prepare(SOSGameLogic game) {
+        this.game = game;
+        if (size != game.getSize() || cellOrder == null) {
+            size = game.getSize();
+            cellOrder = centerFirstOrder(size);
+            int maxPly = size * size + 1;
+            moves = new int[maxPly][2 * size * size];
+            pv = new int[maxPly][maxPly];
+            pvLength = new int[maxPly];
+            previousPv = new int[maxPly];
+            // cellOrder, pvLength and previousPv, then a row of moves and pv per ply
+            allocatedBytes = 4L * (cellOrder.length + 2 * maxPly)
+                + maxPly * (2 * 16 + 4L * (2 * size * size + maxPly));
+        }
+    }
+
+    private int search(int depth, int ply, int alpha, int beta, boolean onPv) {
+        pvLength[ply] = ply;
+
+        if (game.isGameEnded()) {
+            return terminalValue();
+        }
+        if (depth == 0) {
+            depthLimited = true;
+            return evaluate();
+        }
+
+        if (((++nodes & CHECK_INTERVAL) == 0 || nodes >= nodeBudget) && canAbort) {
+            if (System.nanoTime() >= deadline || nodes >= nodeBudget) {
+                aborted = true;
+            }
+        }
+        if (aborted) {
+            return 0;
+        }
+
+        long key = game.getHash();
+        int ttMove = -1;
+        if (table != null) {
+            long entry = table.probe(key);
+            if (entry != 0) {
+                ttMove = TranspositionTable.moveOf(entry);
+                int entryDepth = TranspositionTable.depthOf(entry);
+                if (ply > 0 && entryDepth >= depth) {
+                    int value = TranspositionTable.valueOf(entry);
+                    int bound = TranspositionTable.boundOf(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && value >= beta)
+                            || (bound == TranspositionTable.UPPER && value <= alpha)) {
+                        if (entryDepth != SOLVED_DEPTH) {
+                            depthLimited = true;
+                        }
+                        return value;
+                    }
+                }
+            }
+        }
+
+        int[] list = moves[ply];
+        int pvMove = onPv && ply < previousPvLength ? previousPv[ply] : -1;
+        int count = generateMoves(list, pvMove, ttMove);
+        boolean blueToMove = game.isBlueTurn();
+        int originalAlpha = alpha;
+        int best = -WIN * 2;
+        int bestMove = -1;
+        boolean limitedBefore = depthLimited;
+        depthLimited = false;
+
+        for (int i = 0; i < count; i++) {
+            int move = list[i];
+            int cell = move >>> 1;
+            game.makeMove(cell / size, cell % size, (move & 1) == 0 ? 'S' : 'O');
+
+            boolean childOnPv = move == pvMove;
+            int value;
+            if (game.isBlueTurn() == blueToMove) {
+                value = search(depth - 1, ply + 1, alpha, beta, childOnPv);
+            } else {
+                value = -search(depth - 1, ply + 1, -beta, -alpha, childOnPv);
+            }
+            game.undoMove();
+
+            if (aborted) {
+                return 0;
+            }
+
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                pv[ply][ply] = move;
+                System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+                pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+            }
+            if (value > alpha) {
+                alpha = value;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+
+        boolean subtreeLimited = depthLimited;
+        depthLimited = limitedBefore || subtreeLimited;
+
+        if (table != null) {
+            int bound = best <= originalAlpha ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+            table.store(key, best, bestMove, subtreeLimited ? depth : SOLVED_DEPTH, bound, generation);
+        }
+
+        return best;
+    }
+
+    // Principal variation move first, then the table's best move, then moves
+    // that complete an SOS, then everything else from the centre outwards,
+    // S before O.
+    private int generateMoves(int[] list, int pvMove, int ttMove) {
+        char[][] board = game.getBoard();
+        int count = 0;
+
+        if (isEmptyCell(board, pvMove)) {
+            list[count++] = pvMove;
+        } else {
+            pvMove = -1;
+        }
+        if (ttMove != pvMove && isEmptyCell(board, ttMove)) {
+            list[count++] = ttMove;
+        } else {
+            ttMove = -1;
+        }
+
+        for (int cell : cellOrder) {
+            int row = cell / size;
+            int col = cell % size;
+            if (board[row][col] != '\0') {
+                continue;
+            }
+            for (int letter = 0; letter < 2; letter++) {
+                int move = (cell << 1) | letter;
+                if (move != pvMove && move != ttMove && game.getCompletionCount(row, col, letter == 0 ? 'S' : 'O') > 0) {
+                    list[count++] = move;
+                }
+            }
+        }
+
+        for (int cell : cellOrder) {
+            int row = cell / size;
+            int col = cell % size;
+            if (board[row][col] != '\0') {
+                continue;
+            }
+            for (int letter = 0; letter < 2; letter++) {
+                int move = (cell << 1) | letter;
+                if (move != pvMove && move != ttMove && game.getCompletionCount(row, col, letter == 0 ? 'S' : 'O') == 0) {
+                    list[count++] = move;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    // Table moves can come from a colliding position, so check before playing.
+    private boolean isEmptyCell(char[][] board, int move) {
+        if (move < 0 || (move >>> 1) >= size * size) {
+            return false;
+        }
+        int cell = move >>> 1;
+        return board[cell / size][cell % size] == '\0';
+    }
+
+    private int terminalValue() {
+        int diff = scoreDifference();
+        if (diff > 0) {
+            return WIN + diff;
+        }
+        if (diff < 0) {
+            return -WIN + diff;
+        }
+        return 0;
+    }
+
+    // Whoever is to move gets to take every open completion first.
+    private int evaluate() {
+        return scoreDifference() * SCORE_WEIGHT + game.getThreatCellCount() * THREAT_WEIGHT;
+    }
+
+    private int scoreDifference() {
+        int diff = game.getBlueScore() - game.getRedScore();
+        return game.isBlueTurn() ? diff : -diff;
+    }
+
+    private Move toMove(int move) {
+        if (move < 0) {
+            return null;
+        }
+        int cell = move >>> 1;
+        return new Move(cell / size, cell % size, (move & 1) == 0 ? 'S' : 'O');
+    }
+
+    private static int[] centerFirstOrder(int size) {
+        Integer[] cells = new Integer[size * size];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i;
+        }
+        double center = (size - 1) / 2.0;
+        Arrays.sort(cells, (a, b) -> Double.compare(
+            distance(a / size, a % size, center), distance(b / size, b % size, center)));
+        int[] order = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            order[i] = cells[i];
+        }
+        return order;
+    }
+
+    private static double distance(int row, int col, double center) {
+        return Math.abs(row - center) + Math.abs(col - center);
+    }
+}
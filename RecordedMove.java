@@ -0,0 +1,44 @@
+// One move as stored in a replay file.
+public class RecordedMove {
+    public final int row;
+    public final int col;
+    public final char letter;
+    public final boolean blue;
+    public final boolean ai;
+
+    public RecordedMove(int row, int col, char letter, boolean blue, boolean ai) {
+        this.row = row;
+        this.col = col;
+        this.letter = letter;
+        this.blue = blue;
+        this.ai = ai;
+    }
+
+    public String getColor() {
+        return blue ? "Blue" : "Red";
+    }
+
+    // Reads a line of the old text format. Two field orders were written over
+    // time: "row,col,color,letter,AI|Player" and "row,col,playerType,color,letter".
+    public static RecordedMove parseCsv(String line) {
+        String[] parts = line.trim().split(",");
+        if (parts.length < 5) {
+            throw new IllegalArgumentException("Bad replay line: " + line);
+        }
+        int row = Integer.parseInt(parts[0].trim());
+        int col = Integer.parseInt(parts[1].trim());
+        String third = parts[2].trim();
+        String fourth = parts[3].trim();
+        String fifth = parts[4].trim();
+        if (fourth.length() == 1 && (fourth.charAt(0) == 'S' || fourth.charAt(0) == 'O')) {
+            return new RecordedMove(row, col, fourth.charAt(0), third.equals("Blue"), fifth.equals("AI"));
+        }
+        boolean ai = !third.equalsIgnoreCase("Player") && !third.equalsIgnoreCase("Human");
+        return new RecordedMove(row, col, fifth.charAt(0), fourth.equals("Blue"), ai);
+    }
+
+    @Override
+    public String toString() {
+        return row + "," + col + "," + getColor() + "," + letter + "," + (ai ? "AI" : "Player");
+    }
+}
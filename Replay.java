@@ -0,0 +1,40 @@
+import java.util.List;
+
+// A loaded replay file. Files imported from the old text format carry no
+// header, so their size is inferred from the moves and they are treated as
+// general games between humans; every move of either mode replays that way.
+public class Replay {
+    private final int size;
+    private final boolean simple;
+    private final PlayerType bluePlayer;
+    private final PlayerType redPlayer;
+    private final List<RecordedMove> moves;
+
+    public Replay(int size, boolean simple, PlayerType bluePlayer, PlayerType redPlayer, List<RecordedMove> moves) {
+        this.size = size;
+        this.simple = simple;
+        this.bluePlayer = bluePlayer;
+        this.redPlayer = redPlayer;
+        this.moves = moves;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isSimpleGame() {
+        return simple;
+    }
+
+    public PlayerType getBluePlayerType() {
+        return bluePlayer;
+    }
+
+    public PlayerType getRedPlayerType() {
+        return redPlayer;
+    }
+
+    public List<RecordedMove> getMoves() {
+        return moves;
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Many games in one memory-mapped file, written by ReplayArchiveWriter:
+//
+//   header   "SOSA", version (int), game count (long), index offset (long),
+//            padding to 32 bytes
+//   games    size, flags (bit 0 simple, bits 1-2 winner), blue type, red type,
+//            blue score, red score and move count as varints, then the moves
+//            as varints in the MoveRecorder encoding
+//   index    one long file offset per game id
+//
+// The file is mapped in 1 GB segments that overlap by more than the largest
+// game, so any game lies entirely inside the segment it starts in. Looking a
+// game up is one index read; scan() walks the games in file order.
+public class ReplayArchive implements Closeable {
+    static final byte[] MAGIC = {'S', 'O', 'S', 'A'};
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int MAX_SIZE = 64;
+    static final int MAX_RECORD_BYTES = 4 + 3 * 5 + MAX_SIZE * MAX_SIZE * 5;
+    static final int DRAW = 0;
+    static final int BLUE_WON = 1;
+    static final int RED_WON = 2;
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long[] offsets;
+    private final long dataEnd;
+
+    public ReplayArchive(String filePath) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                continue;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES) {
+                throw new IOException("Not a replay archive: " + filePath);
+            }
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a replay archive: " + filePath);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported archive version " + version);
+            }
+            long games = header.getLong();
+            long indexOffset = header.getLong();
+            boolean indexed = indexOffset >= HEADER_BYTES && indexOffset + games * 8 <= fileSize;
+            this.dataEnd = indexed ? indexOffset : fileSize;
+
+            int segmentCount = (int) Math.max(1, (dataEnd - HEADER_BYTES + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+            this.segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long start = HEADER_BYTES + i * SEGMENT_BYTES;
+                long length = Math.min(SEGMENT_BYTES + MAX_RECORD_BYTES, fileSize - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+            }
+
+            this.offsets = indexed ? readIndex(indexOffset, games) : rebuildIndex();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static boolean isArchive(String filePath) throws IOException {
+        try (FileChannel file = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            while (magic.hasRemaining() && file.read(magic) > 0) {
+                continue;
+            }
+            return Arrays.equals(magic.array(), MAGIC);
+        }
+    }
+
+    public long getGameCount() {
+        return offsets.length;
+    }
+
+    public Game getGame(long id) {
+        return getGame(id, new Game());
+    }
+
+    // Reads into a Game the caller reuses, for scanning without allocation.
+    // Safe to call from several threads with their own Game objects.
+    public Game getGame(long id, Game into) {
+        if (id < 0 || id >= offsets.length) {
+            throw new IndexOutOfBoundsException("No game " + id);
+        }
+        into.read(this, offsets[(int) id]);
+        return into;
+    }
+
+    // The same Game instance is passed for every game, so copy what you keep.
+    public void scan(Consumer<Game> visitor) {
+        Game game = new Game();
+        for (int id = 0; id < offsets.length; id++) {
+            game.read(this, offsets[id]);
+            visitor.accept(game);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long[] readIndex(long indexOffset, long games) throws IOException {
+        if (games > Integer.MAX_VALUE - 8) {
+            throw new IOException("Too many games in archive: " + games);
+        }
+        long[] index = new long[(int) games];
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, games * 8);
+        buffer.asLongBuffer().get(index);
+        return index;
+    }
+
+    // The writer was not closed, so there is no index: walk the games and stop
+    // at the first one that was only partly written.
+    private long[] rebuildIndex() {
+        long[] index = new long[1024];
+        int count = 0;
+        Game game = new Game();
+        long offset = HEADER_BYTES;
+        while (offset < dataEnd) {
+            try {
+                game.read(this, offset);
+            } catch (RuntimeException e) {
+                break;
+            }
+            if (count == index.length) {
+                index = Arrays.copyOf(index, count * 2);
+            }
+            index[count++] = offset;
+            offset = game.end;
+        }
+        return Arrays.copyOf(index, count);
+    }
+
+    public static final class Game {
+        private int size;
+        private boolean simple;
+        private int winner;
+        private PlayerType bluePlayer;
+        private PlayerType redPlayer;
+        private int blueScore;
+        private int redScore;
+        private int moveCount;
+        private int[] moves = new int[64];
+        private long end;
+        private int cursor;
+
+        public Game() {
+        }
+
+        void read(ReplayArchive archive, long offset) {
+            long relative = offset - HEADER_BYTES;
+            ByteBuffer segment = archive.segments[(int) (relative / SEGMENT_BYTES)];
+            cursor = (int) (relative % SEGMENT_BYTES);
+            int recordStart = cursor;
+            if (offset + 4 > archive.dataEnd) {
+                throw new IndexOutOfBoundsException("Truncated game at " + offset);
+            }
+
+            size = segment.get(cursor++) & 0xFF;
+            int flags = segment.get(cursor++);
+            simple = (flags & 1) != 0;
+            winner = (flags >>> 1) & 3;
+            bluePlayer = playerType(segment.get(cursor++));
+            redPlayer = playerType(segment.get(cursor++));
+            blueScore = varint(segment);
+            redScore = varint(segment);
+            moveCount = varint(segment);
+            if (size < 1 || size > MAX_SIZE || moveCount < 0 || moveCount > size * size) {
+                throw new IllegalStateException("Corrupt game at " + offset);
+            }
+            if (moves.length < moveCount) {
+                moves = new int[Math.max(moveCount, moves.length * 2)];
+            }
+            for (int i = 0; i < moveCount; i++) {
+                moves[i] = varint(segment);
+            }
+            end = offset + (cursor - recordStart);
+            if (end > archive.dataEnd) {
+                throw new IndexOutOfBoundsException("Truncated game at " + offset);
+            }
+        }
+
+        private int varint(ByteBuffer segment) {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = segment.get(cursor++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Malformed varint");
+        }
+
+        private static PlayerType playerType(byte ordinal) {
+            PlayerType[] types = PlayerType.values();
+            return ordinal >= 0 && ordinal < types.length ? types[ordinal] : PlayerType.HUMAN;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isSimpleGame() {
+            return simple;
+        }
+
+        public PlayerType getBluePlayerType() {
+            return bluePlayer;
+        }
+
+        public PlayerType getRedPlayerType() {
+            return redPlayer;
+        }
+
+        public int getBlueScore() {
+            return blueScore;
+        }
+
+        public int getRedScore() {
+            return redScore;
+        }
+
+        // "Blue", "Red" or "Draw".
+        public String getWinner() {
+            return winner == BLUE_WON ? "Blue" : winner == RED_WON ? "Red" : "Draw";
+        }
+
+        public int getMoveCount() {
+            return moveCount;
+        }
+
+        // In the MoveRecorder encoding: cell << 3 | isO << 2 | blue << 1 | ai.
+        public int getEncodedMove(int index) {
+            return moves[index];
+        }
+
+        public RecordedMove getMove(int index) {
+            int move = moves[index];
+            int cell = move >>> 3;
+            return new RecordedMove(cell / size, cell % size, (move & 4) != 0 ? 'O' : 'S',
+                (move & 2) != 0, (move & 1) != 0);
+        }
+
+        public Replay toReplay() {
+            List<RecordedMove> list = new ArrayList<>(moveCount);
+            for (int i = 0; i < moveCount; i++) {
+                list.add(getMove(i));
+            }
+            return new Replay(size, simple, bluePlayer, redPlayer, list);
+        }
+    }
+}
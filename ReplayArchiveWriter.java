@@ -0,0 +1,121 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Writes a ReplayArchive. Games are appended through a large buffer and the
+// offset index is written after the last game by close(); an archive that was
+// never closed is still readable, its index is rebuilt by scanning. Appends
+// are synchronized so tournament workers can share one writer.
+public class ReplayArchiveWriter implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long position = ReplayArchive.HEADER_BYTES;
+    private long[] offsets = new long[1024];
+    private int gameCount = 0;
+    private boolean closed = false;
+
+    public ReplayArchiveWriter(String filePath) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader(0, 0);
+    }
+
+    // Moves use the MoveRecorder file encoding. Returns the game id.
+    public synchronized long append(int size, boolean simple, PlayerType bluePlayer, PlayerType redPlayer,
+                                    int blueScore, int redScore, int[] moves, int moveCount) throws IOException {
+        if (closed) {
+            throw new IOException("Archive is closed");
+        }
+        if (size < 1 || size > ReplayArchive.MAX_SIZE) {
+            throw new IllegalArgumentException("Board size " + size + " cannot be archived");
+        }
+        if (moveCount > size * size) {
+            throw new IllegalArgumentException(moveCount + " moves do not fit a " + size + "x" + size + " board");
+        }
+        if (buffer.remaining() < ReplayArchive.MAX_RECORD_BYTES) {
+            drain();
+        }
+
+        int winner = blueScore > redScore ? ReplayArchive.BLUE_WON
+            : redScore > blueScore ? ReplayArchive.RED_WON
+            : ReplayArchive.DRAW;
+        int start = buffer.position();
+        buffer.put((byte) size);
+        buffer.put((byte) ((simple ? 1 : 0) | (winner << 1)));
+        buffer.put((byte) bluePlayer.ordinal());
+        buffer.put((byte) redPlayer.ordinal());
+        MoveRecorder.putVarint(buffer, blueScore);
+        MoveRecorder.putVarint(buffer, redScore);
+        MoveRecorder.putVarint(buffer, moveCount);
+        for (int i = 0; i < moveCount; i++) {
+            MoveRecorder.putVarint(buffer, moves[i]);
+        }
+
+        if (gameCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, gameCount * 2);
+        }
+        offsets[gameCount] = position;
+        position += buffer.position() - start;
+        return gameCount++;
+    }
+
+    public synchronized long getGameCount() {
+        return gameCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            drain();
+            long indexOffset = position;
+            long at = indexOffset;
+            buffer.clear();
+            for (int i = 0; i < gameCount; i++) {
+                buffer.putLong(offsets[i]);
+                if (!buffer.hasRemaining()) {
+                    at = writeAt(buffer, at);
+                }
+            }
+            writeAt(buffer, at);
+            channel.force(false);
+            writeHeader(gameCount, indexOffset);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeHeader(long games, long indexOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ReplayArchive.HEADER_BYTES);
+        header.put(ReplayArchive.MAGIC);
+        header.putInt(ReplayArchive.VERSION);
+        header.putLong(games);
+        header.putLong(indexOffset);
+        header.position(header.capacity());
+        writeAt(header, 0);
+    }
+
+    private void drain() throws IOException {
+        writeAt(buffer, position - buffer.position());
+    }
+
+    // Writes what the buffer holds at the given file offset and empties it.
+    private long writeAt(ByteBuffer data, long offset) throws IOException {
+        data.flip();
+        while (data.hasRemaining()) {
+            offset += channel.write(data, offset);
+        }
+        data.clear();
+        return offset;
+    }
+}
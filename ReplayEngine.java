@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Plays a replay through SOSGameLogic so scores and SOS highlights are exact
+// at every move. A full snapshot is kept every keyframeInterval moves; a seek
+// either steps from the current position with makeMove/undoMove or restores
+// the nearest keyframe at or before the target and plays forward, whichever
+// is fewer moves. Any seek therefore costs at most one snapshot copy and
+// keyframeInterval moves, however long the game.
+public class ReplayEngine {
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 16;
+
+    private final Replay replay;
+    private final int keyframeInterval;
+    private final List<RecordedMove> moves;
+    private final List<SOSGameLogic> keyframes = new ArrayList<>();
+    private final List<List<int[]>> sosByMove = new ArrayList<>();
+    private final SOSGameLogic game;
+    private int position = 0;
+
+    public ReplayEngine(Replay replay) {
+        this(replay, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public ReplayEngine(Replay replay, int keyframeInterval) {
+        this.replay = replay;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.moves = replay.getMoves();
+        this.game = newGame();
+
+        // Play the whole game once to check it and take the keyframes.
+        for (int i = 0; i <= moves.size(); i++) {
+            if (i % this.keyframeInterval == 0) {
+                SOSGameLogic keyframe = newGame();
+                keyframe.copyStateFrom(game);
+                keyframes.add(keyframe);
+            }
+            if (i < moves.size()) {
+                apply(i);
+                sosByMove.add(game.getLastSOSCoordinates());
+            }
+        }
+        game.copyStateFrom(keyframes.get(0));
+    }
+
+    private SOSGameLogic newGame() {
+        SOSGameLogic created = SOSGameLogic.createGame(replay.getSize(), replay.isSimpleGame());
+        created.setRecording(false);
+        // seeks step through moves on the way to the target
+        created.setEventsEnabled(false);
+        created.setBluePlayerType(replay.getBluePlayerType());
+        created.setRedPlayerType(replay.getRedPlayerType());
+        return created;
+    }
+
+    private void apply(int index) {
+        RecordedMove move = moves.get(index);
+        if (game.isGameEnded() || game.getBoard()[move.row][move.col] != '\0') {
+            throw new IllegalArgumentException("Replay move " + index + " (" + move + ") is not legal");
+        }
+        game.makeMove(move.row, move.col, move.letter);
+    }
+
+    public void seek(int target) {
+        if (target < 0 || target > moves.size()) {
+            throw new IndexOutOfBoundsException("No move " + target + " in a replay of " + moves.size());
+        }
+        int keyframe = target / keyframeInterval;
+        int fromKeyframe = target - keyframe * keyframeInterval;
+        if (Math.abs(target - position) > fromKeyframe) {
+            game.copyStateFrom(keyframes.get(keyframe));
+            position = keyframe * keyframeInterval;
+        }
+        while (position < target) {
+            apply(position++);
+        }
+        while (position > target) {
+            game.undoMove();
+            position--;
+        }
+    }
+
+    public boolean stepForward() {
+        if (position == moves.size()) {
+            return false;
+        }
+        seek(position + 1);
+        return true;
+    }
+
+    public boolean stepBackward() {
+        if (position == 0) {
+            return false;
+        }
+        seek(position - 1);
+        return true;
+    }
+
+    // Number of moves played so far, from 0 to getMoveCount().
+    public int getPosition() {
+        return position;
+    }
+
+    public int getMoveCount() {
+        return moves.size();
+    }
+
+    public RecordedMove getMove(int index) {
+        return moves.get(index);
+    }
+
+    // The cells of every SOS the move at index completed, three per SOS.
+    public List<int[]> getSOSCoordinates(int index) {
+        return sosByMove.get(index);
+    }
+
+    // The move that led to the current position, or null at the start.
+    public RecordedMove getLastMove() {
+        return position == 0 ? null : moves.get(position - 1);
+    }
+
+    // The position itself; read it but do not play on it.
+    public SOSGameLogic getGame() {
+        return game;
+    }
+}
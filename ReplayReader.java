@@ -0,0 +1,268 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Reads the moves of a replay file one at a time through a fixed 64 KB
+// buffer, so files of any length can be played back or processed. Handles
+// binary replays, journals and the old text format. A journal can undo moves
+// it has already listed, so its moves are collected before the first one is
+// returned; that is at most one board's worth.
+public class ReplayReader implements Iterator<RecordedMove>, Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int TEXT = 0;
+    private static final int BINARY = 1;
+    private static final int JOURNAL = 2;
+    private static final int HEADER_BYTES = 9;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final int format;
+    private boolean endOfFile = false;
+    private int size = 0;
+    private boolean simple = false;
+    private PlayerType bluePlayer = PlayerType.HUMAN;
+    private PlayerType redPlayer = PlayerType.HUMAN;
+    private long remainingMoves;
+    private int[] journalMoves;
+    private int journalCount;
+    private int journalIndex;
+    private RecordedMove next;
+
+    public ReplayReader(String filePath) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            buffer.flip();
+            ensure(HEADER_BYTES);
+            if (startsWith(MoveRecorder.MAGIC)) {
+                format = BINARY;
+                readHeader(MoveRecorder.VERSION);
+                remainingMoves = readVarint();
+            } else if (startsWith(MoveJournal.MAGIC)) {
+                format = JOURNAL;
+                readHeader(MoveJournal.VERSION);
+                readJournal();
+            } else {
+                format = TEXT;
+            }
+            next = advance();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Zero for the text format, which has no header.
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isSimpleGame() {
+        return simple;
+    }
+
+    public PlayerType getBluePlayerType() {
+        return bluePlayer;
+    }
+
+    public PlayerType getRedPlayerType() {
+        return redPlayer;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public RecordedMove next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        RecordedMove move = next;
+        try {
+            next = advance();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return move;
+    }
+
+    // Closing the stream closes the reader.
+    public Stream<RecordedMove> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(() -> {
+                try {
+                    close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private RecordedMove advance() throws IOException {
+        switch (format) {
+            case BINARY:
+                if (remainingMoves == 0) {
+                    return null;
+                }
+                remainingMoves--;
+                return decode(readVarint());
+            case JOURNAL:
+                return journalIndex < journalCount ? decode(journalMoves[journalIndex++]) : null;
+            default:
+                return nextTextMove();
+        }
+    }
+
+    private void readHeader(int expectedVersion) throws IOException {
+        buffer.position(buffer.position() + 4);
+        int version = buffer.get();
+        if (version != expectedVersion) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+        size = buffer.get() & 0xFF;
+        simple = (buffer.get() & 1) != 0;
+        bluePlayer = playerType(buffer.get());
+        redPlayer = playerType(buffer.get());
+    }
+
+    private void readJournal() throws IOException {
+        journalMoves = new int[Math.max(1, size * size)];
+        while (buffer.hasRemaining() || fill()) {
+            int value;
+            try {
+                value = readVarint();
+            } catch (IOException e) {
+                // a torn entry at the end of a journal is dropped
+                break;
+            }
+            if (value == MoveJournal.UNDO) {
+                journalCount = Math.max(0, journalCount - 1);
+            } else if (journalCount < journalMoves.length) {
+                journalMoves[journalCount++] = value - 1;
+            } else {
+                throw new IOException("Corrupt journal file");
+            }
+        }
+    }
+
+    private RecordedMove decode(int move) throws IOException {
+        int cell = move >>> 3;
+        if (size == 0 || cell >= size * size) {
+            throw new IOException("Corrupt replay file");
+        }
+        return new RecordedMove(cell / size, cell % size, (move & 4) != 0 ? 'O' : 'S',
+            (move & 2) != 0, (move & 1) != 0);
+    }
+
+    private RecordedMove nextTextMove() throws IOException {
+        while (true) {
+            String line = readLine();
+            if (line == null) {
+                return null;
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                return RecordedMove.parseCsv(line);
+            } catch (RuntimeException e) {
+                throw new IOException("Bad replay line: " + line, e);
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            for (int i = buffer.position() + scanned; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return takeLine(i - buffer.position(), 1);
+                }
+            }
+            scanned = buffer.remaining();
+            if (!fill()) {
+                return scanned == 0 ? null : takeLine(scanned, 0);
+            }
+            if (buffer.remaining() == scanned) {
+                throw new IOException("Replay line longer than " + BUFFER_BYTES + " bytes");
+            }
+        }
+    }
+
+    private String takeLine(int length, int terminator) {
+        int end = length;
+        if (end > 0 && buffer.get(buffer.position() + end - 1) == '\r') {
+            end--;
+        }
+        String line = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), end, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length + terminator);
+        return line;
+    }
+
+    private int readVarint() throws IOException {
+        ensure(5);
+        try {
+            return MoveRecorder.getVarint(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt replay file", e);
+        }
+    }
+
+    private boolean startsWith(byte[] magic) {
+        if (buffer.remaining() < HEADER_BYTES) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (buffer.get(buffer.position() + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Tops the buffer up until it holds at least count bytes or the file ends.
+    private boolean ensure(int count) throws IOException {
+        while (buffer.remaining() < count && fill()) {
+            continue;
+        }
+        return buffer.remaining() >= count;
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfFile) {
+            return false;
+        }
+        buffer.compact();
+        int read = channel.read(buffer);
+        buffer.flip();
+        if (read < 0) {
+            endOfFile = true;
+            return false;
+        }
+        return true;
+    }
+
+    private static PlayerType playerType(byte ordinal) {
+        PlayerType[] types = PlayerType.values();
+        return ordinal >= 0 && ordinal < types.length ? types[ordinal] : PlayerType.HUMAN;
+    }
+}
@@ -0,0 +1,261 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Headless audit of recorded games. Every game is played again through
+// SOSGameLogic.makeMove, checking that each move is on the board, on an empty
+// cell, before the game ended and by the side whose turn it is. Archived games
+// also have their final scores checked. Replay files (binary, journal or
+// either text field order) are one game each; archives are split into
+// batches of games. Batches run on a fixed pool, at most two per thread at a
+// time, and each result is merged on the calling thread as it finishes, as
+// in Tournament, so memory does not grow with the size of the archive.
+//
+// java ReplayVerifier [--threads N] [--batch N] FILE...
+public class ReplayVerifier {
+    private static final int MAX_PROBLEMS = 1000;
+
+    private final int threads;
+    private final int batchSize;
+
+    public ReplayVerifier(int threads, int batchSize) {
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    public Result verify(List<String> paths) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<ReplayArchive> archives = new ArrayList<>();
+        CompletionService<Result> batches = new ExecutorCompletionService<>(pool);
+        int maxInFlight = threads * 2;
+        int inFlight = 0;
+        Result total = new Result();
+        long start = System.nanoTime();
+        try {
+            for (String path : paths) {
+                List<Callable<Result>> tasks = new ArrayList<>();
+                if (ReplayArchive.isArchive(path)) {
+                    ReplayArchive archive = new ReplayArchive(path);
+                    archives.add(archive);
+                    for (long first = 0; first < archive.getGameCount(); first += batchSize) {
+                        long from = first;
+                        long to = Math.min(archive.getGameCount(), first + batchSize);
+                        tasks.add(() -> verifyArchive(path, archive, from, to));
+                    }
+                } else {
+                    tasks.add(() -> verifyFile(path));
+                }
+                for (Callable<Result> task : tasks) {
+                    if (inFlight == maxInFlight) {
+                        merge(total, batches.take());
+                        inFlight--;
+                    }
+                    batches.submit(task);
+                    inFlight++;
+                }
+            }
+            for (; inFlight > 0; inFlight--) {
+                merge(total, batches.take());
+            }
+            total.elapsedNanos = System.nanoTime() - start;
+            return total;
+        } finally {
+            pool.shutdownNow();
+            for (ReplayArchive archive : archives) {
+                archive.close();
+            }
+        }
+    }
+
+    private static void merge(Result total, Future<Result> batch) throws InterruptedException {
+        try {
+            total.merge(batch.get());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Result verifyFile(String path) {
+        Result result = new Result();
+        Replay replay;
+        try {
+            replay = new MoveRecorder().loadFromFile(path);
+        } catch (IOException | UncheckedIOException e) {
+            result.games++;
+            result.problem(path + ": unreadable: " + e.getMessage());
+            return result;
+        }
+
+        List<RecordedMove> moves = replay.getMoves();
+        int[] encoded = new int[moves.size()];
+        for (int i = 0; i < encoded.length; i++) {
+            RecordedMove move = moves.get(i);
+            if (move.row >= replay.getSize() || move.col >= replay.getSize()) {
+                encoded[i] = -1;
+                continue;
+            }
+            encoded[i] = ((move.row * replay.getSize() + move.col) << 3)
+                | (move.letter == 'O' ? 4 : 0) | (move.blue ? 2 : 0) | (move.ai ? 1 : 0);
+        }
+        replay(path, replay.getSize(), replay.isSimpleGame(), encoded, encoded.length, -1, -1, result);
+        return result;
+    }
+
+    private Result verifyArchive(String path, ReplayArchive archive, long from, long to) {
+        Result result = new Result();
+        ReplayArchive.Game game = new ReplayArchive.Game();
+        int[] moves = new int[0];
+        for (long id = from; id < to; id++) {
+            try {
+                archive.getGame(id, game);
+            } catch (RuntimeException e) {
+                result.games++;
+                result.problem(path + "#" + id + ": unreadable: " + e.getMessage());
+                continue;
+            }
+            if (moves.length < game.getMoveCount()) {
+                moves = new int[game.getMoveCount()];
+            }
+            for (int i = 0; i < game.getMoveCount(); i++) {
+                moves[i] = game.getEncodedMove(i);
+            }
+            replay(path + "#" + id, game.getSize(), game.isSimpleGame(), moves, game.getMoveCount(),
+                game.getBlueScore(), game.getRedScore(), result);
+        }
+        return result;
+    }
+
+    // Expected scores of -1 mean the file does not record them.
+    private static void replay(String name, int size, boolean simple, int[] moves, int count,
+                               int expectedBlue, int expectedRed, Result result) {
+        result.games++;
+        if (size < 1) {
+            // an empty text replay: no moves and no board size to check
+            return;
+        }
+        SOSGameLogic game = SOSGameLogic.createGame(size, simple);
+        game.setRecording(false);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int cell = move >>> 3;
+            if (move < 0 || cell >= size * size) {
+                result.problem(name + ": move " + i + " is off the " + size + "x" + size + " board");
+                return;
+            }
+            int row = cell / size;
+            int col = cell % size;
+            boolean blue = (move & 2) != 0;
+            if (game.isGameEnded()) {
+                result.problem(name + ": move " + i + " at " + row + "," + col + " comes after the game ended");
+                return;
+            }
+            if (game.getBoard()[row][col] != '\0') {
+                result.problem(name + ": move " + i + " at " + row + "," + col + " is on a taken cell");
+                return;
+            }
+            if (blue != game.isBlueTurn()) {
+                result.problem(name + ": move " + i + " was played by " + (blue ? "Blue" : "Red")
+                    + " on " + (game.isBlueTurn() ? "Blue" : "Red") + "'s turn");
+                return;
+            }
+            game.makeMove(row, col, (move & 4) != 0 ? 'O' : 'S');
+            result.moves++;
+        }
+
+        if (expectedBlue >= 0 && (game.getBlueScore() != expectedBlue || game.getRedScore() != expectedRed)) {
+            result.problem(name + ": recorded score " + expectedBlue + "-" + expectedRed
+                + ", replayed score " + game.getBlueScore() + "-" + game.getRedScore());
+        }
+    }
+
+    public static final class Result {
+        final List<String> problems = new ArrayList<>();
+        long inconsistent;
+        long games;
+        long moves;
+        long elapsedNanos;
+
+        void problem(String description) {
+            inconsistent++;
+            if (problems.size() < MAX_PROBLEMS) {
+                problems.add(description);
+            }
+        }
+
+        void merge(Result other) {
+            inconsistent += other.inconsistent;
+            for (String problem : other.problems) {
+                if (problems.size() < MAX_PROBLEMS) {
+                    problems.add(problem);
+                }
+            }
+            games += other.games;
+            moves += other.moves;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getInconsistentGames() {
+            return inconsistent;
+        }
+
+        public List<String> getProblems() {
+            return problems;
+        }
+
+        public void print() {
+            for (String problem : problems) {
+                System.out.println(problem);
+            }
+            if (inconsistent > problems.size()) {
+                System.out.println("... and " + (inconsistent - problems.size()) + " more");
+            }
+
+            double seconds = elapsedNanos / 1e9;
+            System.out.println();
+            System.out.printf(Locale.ROOT, "%d games, %d inconsistent, %d moves in %.2f s: %.0f games/s, %.0f moves/s%n",
+                games, inconsistent, moves, seconds, games / seconds, moves / seconds);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = 4096;
+        List<String> paths = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    paths.add(args[i]);
+                    break;
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: java ReplayVerifier [--threads N] [--batch N] FILE...");
+            return;
+        }
+
+        Result result = new ReplayVerifier(threads, batch).verify(paths);
+        result.print();
+        if (result.getInconsistentGames() > 0) {
+            System.exit(1);
+        }
+    }
+}
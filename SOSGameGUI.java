@@ -1,8 +1,14 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
 import java.util.List;
 import javax.swing.border.TitledBorder;
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 interface GameController {
     boolean makeMove(int row, int col, char letter);
@@ -16,14 +22,17 @@ interface GameController {
     void setRedPlayerType(PlayerType type);
     boolean isCurrentPlayerComputer();
     Move getComputerMove();
+    CompletableFuture<Move> getComputerMoveAsync();
     void saveMoves(String filePath) throws IOException;
-    List<String> replayMoves(String filePath) throws IOException;
+    Replay loadReplay(String filePath) throws IOException;
     char[][] getBoard();
+    void addGameListener(GameListener listener);
 }
 
 public class SOSGameGUI {
     private class SOSGameController implements GameController {
         private SOSGameLogic gameLogic;
+        private final List<GameListener> listeners = new ArrayList<>();
         
         public SOSGameController(int initialSize, boolean isSimple) {
             this.gameLogic = SOSGameLogic.createGame(initialSize, isSimple);
@@ -37,6 +46,9 @@ public class SOSGameGUI {
         @Override
         public void startNewGame(int size, boolean isSimple) {
             this.gameLogic = SOSGameLogic.createGame(size, isSimple);
+            for (GameListener listener : listeners) {
+                gameLogic.addGameListener(listener);
+            }
         }
         
         @Override
@@ -84,13 +96,18 @@ public class SOSGameGUI {
             return gameLogic.getComputerMove();
         }
 
+        @Override
+        public CompletableFuture<Move> getComputerMoveAsync() {
+            return gameLogic.getComputerMoveAsync();
+        }
+
         @Override
         public void saveMoves(String filePath) throws IOException {
             gameLogic.saveMoves(filePath);
         }
 
         @Override
-        public List<String> replayMoves(String filePath) throws IOException {
+        public Replay loadReplay(String filePath) throws IOException {
             return gameLogic.replayMoves(filePath);
         }
 
@@ -98,11 +115,22 @@ public class SOSGameGUI {
         public char[][] getBoard() {
             return gameLogic.getBoard();
         }
+
+        @Override
+        public void addGameListener(GameListener listener) {
+            listeners.add(listener);
+            gameLogic.addGameListener(listener);
+        }
     }
     
+    private static final String REPLAY_FILE = "Replay.sos";
+    private static final String LEGACY_REPLAY_FILE = "Replay.txt";
+
     private JFrame frame;
-    private JButton[][] buttons;
+    private BoardComponent board;
     private JLabel statusLabel;
+    private JLabel blueScoreLabel;
+    private JLabel redScoreLabel;
     private JRadioButton blueS;
     private JRadioButton blueO;
     private JRadioButton redS;
@@ -114,11 +142,21 @@ public class SOSGameGUI {
     private JComboBox<String> redPlayerComboBox;
     private GameController controller;
     private Timer computerMoveTimer;
+    private final int computerMoveDelay;
+    private CompletableFuture<Move> pendingComputerMove;
+    private ReplayEngine replayEngine;
+    private JDialog replayDialog;
+    private Timer replayTimer;
 
     public SOSGameGUI() {
+        this(500);
+    }
+
+    public SOSGameGUI(int computerMoveDelay) {
+        this.computerMoveDelay = computerMoveDelay;
         controller = new SOSGameController(3, true);
         
-        computerMoveTimer = new Timer(500, e -> {
+        computerMoveTimer = new Timer(Math.max(computerMoveDelay, 1), e -> {
             if (!controller.isGameEnded() && controller.isCurrentPlayerComputer()) {
                 makeComputerMove();
             } else {
@@ -130,7 +168,7 @@ public class SOSGameGUI {
             try {
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
             } catch (Exception e) {
-                e.printStackTrace();
+                // the default look and feel works everywhere
             }
             createAndShowGUI();
         });
@@ -168,6 +206,8 @@ public class SOSGameGUI {
         statusLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
         contentPane.add(statusLabel, BorderLayout.SOUTH);
         
+        controller.addGameListener(new BoardUpdater());
+        
         checkAndStartComputerTurn();
     }
     
@@ -210,32 +250,17 @@ public class SOSGameGUI {
     }
     
     private JPanel createGameBoardPanel(int size) {
-        JPanel gameBoard = new JPanel(new GridLayout(size, size));
-        gameBoard.setBorder(BorderFactory.createLineBorder(Color.BLACK));
+        JPanel gameBoard = new JPanel(new BorderLayout());
         gameBoard.setName("gameBoard");
         
-        buttons = new JButton[size][size];
-        
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                final int row = i;
-                final int col = j;
-                
-                buttons[i][j] = new JButton("");
-                buttons[i][j].setFont(new Font("SansSerif", Font.BOLD, 18));
-                buttons[i][j].setFocusPainted(false);
-                buttons[i][j].setBorder(BorderFactory.createLineBorder(Color.GRAY));
-                buttons[i][j].setBackground(Color.WHITE);
-                
-                buttons[i][j].addActionListener(e -> {
-                    if (!controller.isGameEnded() && !controller.isCurrentPlayerComputer()) {
-                        makeMove(row, col);
-                    }
-                });
-                
-                gameBoard.add(buttons[i][j]);
+        board = new BoardComponent(size);
+        board.setCellListener((row, col) -> {
+            if (replayEngine == null && !controller.isGameEnded() && !controller.isCurrentPlayerComputer()
+                    && controller.getBoard()[row][col] == '\0') {
+                makeMove(row, col);
             }
-        }
+        });
+        gameBoard.add(board, BorderLayout.CENTER);
         
         return gameBoard;
     }
@@ -257,7 +282,7 @@ public class SOSGameGUI {
         playerTypePanel.setBackground(Color.WHITE);
         playerTypePanel.add(new JLabel("Player type:"));
         
-        String[] playerTypes = {"Human", "Computer (Easy)", "Computer (Medium)", "Computer (Hard)"};
+        String[] playerTypes = {"Human", "Computer (Easy)", "Computer (Medium)", "Computer (Hard)", "Computer (MCTS)"};
         JComboBox<String> playerTypeCombo = new JComboBox<>(playerTypes);
         playerTypeCombo.setPreferredSize(new Dimension(150, 25));
         playerTypePanel.add(playerTypeCombo);
@@ -265,6 +290,11 @@ public class SOSGameGUI {
         if (isBlue) {
             bluePlayerComboBox = playerTypeCombo;
             playerTypeCombo.addActionListener(e -> {
+                if (replayEngine != null) {
+                    // the live game was cleared for the replay; start it afresh
+                    startNewGame();
+                    return;
+                }
                 PlayerType type = getPlayerTypeFromSelection(playerTypeCombo.getSelectedIndex());
                 controller.setBluePlayerType(type);
                 checkAndStartComputerTurn();
@@ -272,6 +302,10 @@ public class SOSGameGUI {
         } else {
             redPlayerComboBox = playerTypeCombo;
             playerTypeCombo.addActionListener(e -> {
+                if (replayEngine != null) {
+                    startNewGame();
+                    return;
+                }
                 PlayerType type = getPlayerTypeFromSelection(playerTypeCombo.getSelectedIndex());
                 controller.setRedPlayerType(type);
                 checkAndStartComputerTurn();
@@ -322,8 +356,10 @@ public class SOSGameGUI {
         
         if (isBlue) {
             scoreLabel.setName("blueScore");
+            blueScoreLabel = scoreLabel;
         } else {
             scoreLabel.setName("redScore");
+            redScoreLabel = scoreLabel;
         }
         
         panel.add(Box.createVerticalStrut(20));
@@ -338,6 +374,7 @@ public class SOSGameGUI {
             case 1: return PlayerType.COMPUTER_EASY;
             case 2: return PlayerType.COMPUTER_MEDIUM;
             case 3: return PlayerType.COMPUTER_HARD;
+            case 4: return PlayerType.COMPUTER_MCTS;
             default: return PlayerType.HUMAN;
         }
     }
@@ -346,41 +383,97 @@ public class SOSGameGUI {
         boolean isBlue = controller.isBlueTurn(); 
         char letter = getSelectedLetter(isBlue);
         
-        boolean formedSOS = controller.makeMove(row, col, letter);
-        updateUI(row, col, letter, formedSOS, isBlue); 
-        
+        controller.makeMove(row, col, letter);
         checkAndStartComputerTurn();
     }
     
     private void makeComputerMove() {
-        Move move = controller.getComputerMove();
-        if (move != null) {
-            boolean isBlue = controller.isBlueTurn(); 
-            boolean formedSOS = controller.makeMove(move.row, move.col, move.letter);
-            updateUI(move.row, move.col, move.letter, formedSOS, isBlue);
-            
-            checkAndStartComputerTurn();
+        if (pendingComputerMove != null) {
+            return;
+        }
+
+        CompletableFuture<Move> future = controller.getComputerMoveAsync();
+        pendingComputerMove = future;
+        future.whenComplete((move, error) -> SwingUtilities.invokeLater(() -> {
+            if (pendingComputerMove != future) {
+                return;
+            }
+            pendingComputerMove = null;
+
+            if (error != null) {
+                showComputerMoveFailure(error);
+                return;
+            }
+            if (move != null) {
+                controller.makeMove(move.row, move.col, move.letter);
+                checkAndStartComputerTurn();
+            }
+        }));
+    }
+
+    // Hands the side that failed to a human so the game can go on.
+    private void showComputerMoveFailure(Throwable error) {
+        computerMoveTimer.stop();
+        boolean blue = controller.isBlueTurn();
+        (blue ? bluePlayerComboBox : redPlayerComboBox).setSelectedIndex(0);
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        statusLabel.setText("Computer move failed (" + cause.getMessage() + "); "
+            + (blue ? "blue" : "red") + " is now played by a human");
+    }
+
+    private void cancelComputerMove() {
+        if (pendingComputerMove != null) {
+            pendingComputerMove.cancel(false);
+            pendingComputerMove = null;
         }
     }
     
-    private void updateUI(int row, int col, char letter, boolean formedSOS, boolean isBlue) {
-        buttons[row][col].setText(String.valueOf(letter));
-        buttons[row][col].setForeground(isBlue ? Color.BLUE : Color.RED);
-        
-        for (int i = 0; i < buttons.length; i++) {
-            for (int j = 0; j < buttons[i].length; j++) {
-                buttons[i][j].setBackground(Color.WHITE);
+    // Applies each change the game reports; nothing is rescanned per move.
+    // The live game is not drawn while a replay is showing.
+    private class BoardUpdater implements GameListener {
+        @Override
+        public void cellPlaced(int row, int col, char letter, boolean blue) {
+            if (replayEngine == null) {
+                board.setCell(row, col, letter, blue);
             }
         }
-        
-        List<int[]> sosCoordinates = controller.getSOSCoordinates();
-        Color highlightColor = isBlue ? new Color(200, 230, 255) : new Color(255, 220, 220);
-        for (int[] coord : sosCoordinates) {
-            buttons[coord[0]][coord[1]].setBackground(highlightColor);
+
+        @Override
+        public void sosFormed(List<int[]> coordinates, boolean blue) {
+            if (replayEngine == null) {
+                addSOSLines(coordinates, blue);
+            }
+        }
+
+        @Override
+        public void scoreChanged(int blueScore, int redScore) {
+            if (replayEngine == null) {
+                showScores(blueScore, redScore);
+            }
+        }
+
+        @Override
+        public void turnChanged(boolean blueTurn) {
+            if (replayEngine == null) {
+                updateStatus();
+            }
+        }
+
+        @Override
+        public void gameEnded(int blueScore, int redScore) {
+            if (replayEngine == null) {
+                updateStatus();
+            }
+        }
+    }
+
+    // Coordinates come three cells per SOS; the line joins the two S cells.
+    private void addSOSLines(List<int[]> sosCoordinates, boolean isBlue) {
+        for (int i = 0; i + 2 < sosCoordinates.size(); i += 3) {
+            int[] first = sosCoordinates.get(i);
+            int[] last = sosCoordinates.get(i + 2);
+            board.addSOSLine(first[0], first[1], last[0], last[1], isBlue);
         }
-        
-        updateStatus();
-        updateScores();
     }
     
     private void updateStatus() {
@@ -402,31 +495,31 @@ public class SOSGameGUI {
     }
     
     private void updateScores() {
-        for (Component comp : frame.getContentPane().getComponents()) {
-            if (comp instanceof JPanel) {
-                JPanel panel = (JPanel) comp;
-                for (Component c : panel.getComponents()) {
-                    if (c instanceof JLabel && "blueScore".equals(c.getName())) {
-                        ((JLabel) c).setText("Score: " + controller.getBlueScore());
-                    } else if (c instanceof JLabel && "redScore".equals(c.getName())) {
-                        ((JLabel) c).setText("Score: " + controller.getRedScore());
-                    }
-                }
-            }
-        }
+        showScores(controller.getBlueScore(), controller.getRedScore());
+    }
+
+    private void showScores(int blueScore, int redScore) {
+        blueScoreLabel.setText("Score: " + blueScore);
+        redScoreLabel.setText("Score: " + redScore);
     }
     
     private void checkAndStartComputerTurn() {
         computerMoveTimer.stop();
+        cancelComputerMove();
         
         if (!controller.isGameEnded() && controller.isCurrentPlayerComputer()) {
             SwingUtilities.invokeLater(() -> {
-                computerMoveTimer.start();
+                if (computerMoveDelay > 0) {
+                    computerMoveTimer.start();
+                } else if (!controller.isGameEnded() && controller.isCurrentPlayerComputer()) {
+                    makeComputerMove();
+                }
             });
         }
     }
     
     private void startNewGame() {
+        endReplay();
         try {
             int boardSize = Integer.parseInt(boardSizeField.getText().trim());
             if (boardSize < 3 || boardSize > 12) {
@@ -436,6 +529,7 @@ public class SOSGameGUI {
             }
             
             boolean isSimpleGame = simpleGameRadioButton.isSelected();
+            cancelComputerMove();
             controller.startNewGame(boardSize, isSimpleGame);
             controller.setBluePlayerType(
                 getPlayerTypeFromSelection(bluePlayerComboBox.getSelectedIndex())
@@ -445,25 +539,9 @@ public class SOSGameGUI {
                 getPlayerTypeFromSelection(redPlayerComboBox.getSelectedIndex())
             );
             
-            Container contentPane = frame.getContentPane();
-            Component oldGameBoard = null;
-            for (Component comp : contentPane.getComponents()) {
-                if (comp instanceof JPanel && "gameBoard".equals(comp.getName())) {
-                    oldGameBoard = comp;
-                    break;
-                }
-            }
-            
-            if (oldGameBoard != null) {
-                contentPane.remove(oldGameBoard);
-            }
-            
-            JPanel gameBoardPanel = createGameBoardPanel(boardSize);
-            contentPane.add(gameBoardPanel, BorderLayout.CENTER);
+            board.setBoardSize(boardSize);
             statusLabel.setText("Current turn: blue");
             updateScores();
-            frame.revalidate();
-            frame.repaint();
             computerMoveTimer.stop();
             
             checkAndStartComputerTurn();
@@ -483,7 +561,7 @@ public class SOSGameGUI {
 
     private void saveMoves() {
         try {
-            String filePath = "Replay.txt";
+            String filePath = REPLAY_FILE;
             controller.saveMoves(filePath);
             JOptionPane.showMessageDialog(frame, "Replay saved at " + filePath);
         } catch (IOException e) {
@@ -493,40 +571,111 @@ public class SOSGameGUI {
 
     private void replayMoves() {
         try {
-            String filePath = "Replay.txt";
-            List<String> moves = controller.replayMoves(filePath);
+            String filePath = new File(REPLAY_FILE).exists() ? REPLAY_FILE : LEGACY_REPLAY_FILE;
+            endReplay();
+            computerMoveTimer.stop();
+            cancelComputerMove();
+            Replay replay = controller.loadReplay(filePath);
+            replayEngine = new ReplayEngine(replay);
+            board.setBoardSize(replay.getSize());
+            showReplayPosition();
+            showReplayControls();
+        } catch (IOException | IllegalArgumentException e) {
+            replayEngine = null;
+            JOptionPane.showMessageDialog(frame, "Failed to replay moves: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
-            for (int i = 0; i < buttons.length; i++) {
-                for (int j = 0; j < buttons[i].length; j++) {
-                    buttons[i][j].setText("");
-                    buttons[i][j].setBackground(Color.WHITE); 
-                }
+    private void showReplayControls() {
+        JDialog dialog = new JDialog(frame, "Replay", false);
+        JSlider slider = new JSlider(0, replayEngine.getMoveCount(), 0);
+        Timer playTimer = new Timer(1000, null);
+        replayDialog = dialog;
+        replayTimer = playTimer;
+        JButton playButton = new JButton("Play");
+
+        slider.addChangeListener(e -> {
+            if (replayEngine != null && slider.getValue() != replayEngine.getPosition()) {
+                replayEngine.seek(slider.getValue());
+                showReplayPosition();
+            }
+        });
+        playTimer.addActionListener(e -> {
+            if (replayEngine == null || replayEngine.getPosition() == replayEngine.getMoveCount()) {
+                playTimer.stop();
+                playButton.setText("Play");
+            } else {
+                slider.setValue(replayEngine.getPosition() + 1);
             }
+        });
+        playButton.addActionListener(e -> {
+            if (playTimer.isRunning()) {
+                playTimer.stop();
+                playButton.setText("Play");
+            } else {
+                playTimer.start();
+                playButton.setText("Pause");
+            }
+        });
+
+        JButton startButton = new JButton("|<");
+        startButton.addActionListener(e -> slider.setValue(0));
+        JButton backButton = new JButton("<");
+        backButton.addActionListener(e -> slider.setValue(slider.getValue() - 1));
+        JButton forwardButton = new JButton(">");
+        forwardButton.addActionListener(e -> slider.setValue(slider.getValue() + 1));
+        JButton endButton = new JButton(">|");
+        endButton.addActionListener(e -> slider.setValue(slider.getMaximum()));
 
-            Timer replayTimer = new Timer(1000, null); 
-            final int[] moveIndex = {0};
-
-            replayTimer.addActionListener(e -> {
-                if (moveIndex[0] < moves.size()) {
-                    String move = moves.get(moveIndex[0]);
-                    String[] parts = move.split(",");
-                    int row = Integer.parseInt(parts[0]);
-                    int col = Integer.parseInt(parts[1]);
-                    String color = parts[2];
-                    char letter = parts[3].charAt(0); 
-                    buttons[row][col].setText(String.valueOf(letter));
-                    buttons[row][col].setForeground(color.equals("Blue") ? Color.BLUE : Color.RED);
-
-                    moveIndex[0]++;
-                } else {
-                    replayTimer.stop();
+        JPanel buttonsPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 5));
+        buttonsPanel.add(startButton);
+        buttonsPanel.add(backButton);
+        buttonsPanel.add(playButton);
+        buttonsPanel.add(forwardButton);
+        buttonsPanel.add(endButton);
+
+        dialog.setLayout(new BorderLayout(5, 5));
+        dialog.add(slider, BorderLayout.NORTH);
+        dialog.add(buttonsPanel, BorderLayout.CENTER);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                // closed by the user rather than by endReplay
+                if (replayDialog == dialog) {
+                    startNewGame();
                 }
-            });
+            }
+        });
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.pack();
+        dialog.setLocationRelativeTo(frame);
+        dialog.setVisible(true);
+    }
 
-            replayTimer.start();
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(frame, "Failed to replay moves: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    // Leaves replay mode, if it is on, without touching the live game.
+    private void endReplay() {
+        if (replayEngine == null) {
+            return;
         }
+        replayEngine = null;
+        replayTimer.stop();
+        JDialog dialog = replayDialog;
+        replayDialog = null;
+        replayTimer = null;
+        dialog.dispose();
+    }
+
+    private void showReplayPosition() {
+        SOSGameLogic game = replayEngine.getGame();
+        board.clear();
+        for (int i = 0; i < replayEngine.getPosition(); i++) {
+            RecordedMove move = replayEngine.getMove(i);
+            board.setCell(move.row, move.col, move.letter, move.blue);
+            addSOSLines(replayEngine.getSOSCoordinates(i), move.blue);
+        }
+
+        showScores(game.getBlueScore(), game.getRedScore());
+        statusLabel.setText("Replay: move " + replayEngine.getPosition() + " of " + replayEngine.getMoveCount());
     }
     
     public static void main(String[] args) {
@@ -1,7 +1,13 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 interface Game {
     boolean makeMove(int row, int col, char letter);
@@ -14,7 +20,8 @@ enum PlayerType {
     HUMAN,
     COMPUTER_EASY,
     COMPUTER_MEDIUM,
-    COMPUTER_HARD
+    COMPUTER_HARD,
+    COMPUTER_MCTS
 }
 
 class Move {
@@ -33,6 +40,18 @@ interface Player {
     Move getNextMove(SOSGameLogic game);
     PlayerType getType();
     boolean isComputer();
+
+    // Heap the player keeps between moves, for caches that budget memory.
+    default long estimatedBytes() {
+        return 64;
+    }
+
+    // Thinks on a private copy taken now, so the caller may keep playing on
+    // or discard the game while the move is computed.
+    default CompletableFuture<Move> getNextMoveAsync(SOSGameLogic game, Executor executor) {
+        SOSGameLogic snapshot = game.createCopy();
+        return CompletableFuture.supplyAsync(() -> getNextMove(snapshot), executor);
+    }
 }
 
 class HumanPlayer implements Player {
@@ -61,24 +80,12 @@ abstract class ComputerPlayer implements Player {
     }
     
     protected Move findRandomMove(SOSGameLogic game) {
-        int size = game.getSize();
-        char[][] board = game.getBoard();
-        List<Integer> emptyCells = new ArrayList<>();
-        
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (board[i][j] == '\0') {
-                    emptyCells.add(i * size + j);
-                }
-            }
-        }
-        
-        if (emptyCells.isEmpty()) {
+        int cellIndex = game.getRandomEmptyCell(random);
+        if (cellIndex < 0) {
             return null;
         }
-        
-        int randomIndex = random.nextInt(emptyCells.size());
-        int cellIndex = emptyCells.get(randomIndex);
+
+        int size = game.getSize();
         int row = cellIndex / size;
         int col = cellIndex % size;
         char letter = random.nextBoolean() ? 'S' : 'O';
@@ -99,21 +106,7 @@ class EasyComputerPlayer extends ComputerPlayer {
     }
 
     private Move findPotentialSOS(SOSGameLogic game) {
-        int size = game.getSize();
-        char[][] board = game.getBoard();
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (board[i][j] == '\0') {
-                    if (game.wouldFormSOS(i, j, 'S')) {
-                        return new Move(i, j, 'S');
-                    }
-                    if (game.wouldFormSOS(i, j, 'O')) {
-                        return new Move(i, j, 'O');
-                    }
-                }
-            }
-        }
-        return null;
+        return game.findSOSMove();
     }
 
     @Override
@@ -139,27 +132,14 @@ class MediumComputerPlayer extends ComputerPlayer {
     }
 
     protected Move findBlockingMove(SOSGameLogic game) {
-        SOSGameLogic tempGame = game.createCopy();
-        tempGame.toggleTurn(); 
-        return findPotentialSOS(tempGame);
+        game.toggleTurn();
+        Move blockMove = findPotentialSOS(game);
+        game.toggleTurn();
+        return blockMove;
     }
 
     protected Move findPotentialSOS(SOSGameLogic game) {
-        int size = game.getSize();
-        char[][] board = game.getBoard();
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (board[i][j] == '\0') {
-                    if (game.wouldFormSOS(i, j, 'S')) {
-                        return new Move(i, j, 'S');
-                    }
-                    if (game.wouldFormSOS(i, j, 'O')) {
-                        return new Move(i, j, 'O');
-                    }
-                }
-            }
-        }
-        return null;
+        return game.findSOSMove();
     }
 
     @Override
@@ -168,91 +148,78 @@ class MediumComputerPlayer extends ComputerPlayer {
     }
 }
 
-class HardComputerPlayer extends MediumComputerPlayer {
-    @Override
-    public Move getNextMove(SOSGameLogic game) {
-        Move sosMove = findPotentialSOS(game);
-        if (sosMove != null) {
-            return sosMove;
-        }
+class HardComputerPlayer extends ComputerPlayer {
+    // The node budget keeps a default move to about a millisecond on any
+    // board; the time budget only caps the rare slow move.
+    static final long DEFAULT_NODE_BUDGET = 200;
+    static final long DEFAULT_TIME_BUDGET_MILLIS = 50;
 
-        Move blockMove = findBlockingMove(game);
-        if (blockMove != null) {
-            return blockMove;
-        }
+    private final NegamaxSearch search;
 
-        Move strategicMove = findBestStrategicMove(game);
-        if (strategicMove != null) {
-            return strategicMove;
-        }
+    public HardComputerPlayer() {
+        this(DEFAULT_TIME_BUDGET_MILLIS, DEFAULT_NODE_BUDGET);
+    }
 
-        return findRandomMove(game);
+    public HardComputerPlayer(long timeBudgetMillis, long nodeBudget) {
+        this(timeBudgetMillis, nodeBudget, TranspositionTable.shared());
     }
 
-    private Move findBestStrategicMove(SOSGameLogic game) {
-        int size = game.getSize();
-        char[][] board = game.getBoard();
-        Move bestMove = null;
-        int maxScore = Integer.MIN_VALUE;
+    public HardComputerPlayer(long timeBudgetMillis, long nodeBudget, TranspositionTable table) {
+        this.search = new NegamaxSearch(timeBudgetMillis, nodeBudget, table);
+    }
 
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (board[i][j] == '\0') {
-                    for (char letter : new char[]{'S', 'O'}) {
-                        int score = evaluateMove(game, i, j, letter);
-                        if (score > maxScore) {
-                            maxScore = score;
-                            bestMove = new Move(i, j, letter);
-                        }
-                    }
-                }
-            }
+    @Override
+    public Move getNextMove(SOSGameLogic game) {
+        Move bestMove = search.findBestMove(game);
+        if (bestMove != null) {
+            return bestMove;
         }
-        return bestMove;
+
+        return findRandomMove(game);
     }
 
-    private int evaluateMove(SOSGameLogic game, int row, int col, char letter) {
-        SOSGameLogic tempGame = game.createCopy();
-        tempGame.makeMove(row, col, letter);
+    @Override
+    public PlayerType getType() {
+        return PlayerType.COMPUTER_HARD;
+    }
 
-        int score = 0;
-        if (tempGame.wouldFormSOS(row, col, letter)) {
-            score += 10; 
-        }
+    @Override
+    public long estimatedBytes() {
+        return 64 + search.getAllocatedBytes();
+    }
+}
 
-        score += countPotentialSOSOpportunities(tempGame, row, col);
+class MCTSComputerPlayer extends ComputerPlayer {
+    static final long DEFAULT_TIME_BUDGET_MILLIS = 250;
 
-        return score;
-    }
+    private final MonteCarloTreeSearch search;
 
-    private int countPotentialSOSOpportunities(SOSGameLogic game, int row, int col) {
-        int opportunities = 0;
-        int[][] directions = {
-            {-1, -1}, {-1, 0}, {-1, 1},
-            {0, -1},           {0, 1},
-            {1, -1},  {1, 0},  {1, 1}
-        };
+    public MCTSComputerPlayer() {
+        this(MonteCarloTreeSearch.DEFAULT_THREADS, 0, DEFAULT_TIME_BUDGET_MILLIS);
+    }
 
-        for (int[] dir : directions) {
-            int dr = dir[0];
-            int dc = dir[1];
-            int r1 = row + dr;
-            int c1 = col + dc;
-            int r2 = row - dr;
-            int c2 = col - dc;
+    public MCTSComputerPlayer(int threads, long playoutBudget, long timeBudgetMillis) {
+        this.search = new MonteCarloTreeSearch(threads, playoutBudget, timeBudgetMillis);
+    }
 
-            if (game.isValidPosition(r1, c1) && game.isValidPosition(r2, c2)) {
-                if (game.getBoard()[r1][c1] == '\0' || game.getBoard()[r2][c2] == '\0') {
-                    opportunities++;
-                }
-            }
+    @Override
+    public Move getNextMove(SOSGameLogic game) {
+        Move bestMove = search.findBestMove(game);
+        if (bestMove != null) {
+            return bestMove;
         }
-        return opportunities;
+
+        return findRandomMove(game);
     }
 
     @Override
     public PlayerType getType() {
-        return PlayerType.COMPUTER_HARD;
+        return PlayerType.COMPUTER_MCTS;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return 64 + search.getAllocatedBytes();
     }
 }
 
@@ -267,6 +234,8 @@ class PlayerFactory {
                 return new MediumComputerPlayer();
             case COMPUTER_HARD:
                 return new HardComputerPlayer();
+            case COMPUTER_MCTS:
+                return new MCTSComputerPlayer();
             default:
                 return new HumanPlayer();
         }
@@ -274,30 +243,65 @@ class PlayerFactory {
 }
 
 public abstract class SOSGameLogic implements Game {
+    private static final int RECORDED = 8;
+    // Heap used by the board and its indexes, measured on JDK 17 with
+    // half-full 3x3 to 12x12 boards; the keys are shared by every game of
+    // a size and not counted.
+    private static final long BASE_BYTES = 640;
+    private static final long BYTES_PER_CELL = 28;
+    private static final ExecutorService COMPUTER_MOVE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sos-computer-move");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     protected int size;
     protected char[][] board;
+    protected BitBoard bits;
+    protected FreeCellSet freeCells;
+    protected ThreatMap threats;
     protected boolean blueTurn = true;
     protected int blueScore = 0;
     protected int redScore = 0;
     protected boolean gameEnded = false;
-    protected List<int[]> lastSOSCoordinates = new ArrayList<>();
+    protected int[] lastSOSCells = new int[24];
+    protected int lastSOSCellCount = 0;
     protected boolean isSimple;
-    protected Player bluePlayer = PlayerFactory.createPlayer(PlayerType.HUMAN);
-    protected Player redPlayer = PlayerFactory.createPlayer(PlayerType.HUMAN);
+    protected PlayerType bluePlayerType = PlayerType.HUMAN;
+    protected PlayerType redPlayerType = PlayerType.HUMAN;
+    // Built when first asked for a move, since a computer player can hold a
+    // lot of memory and most games only need to know who plays each side.
+    private Player bluePlayer;
+    private Player redPlayer;
     private MoveRecorder moveRecorder = new MoveRecorder();
+    private boolean recording = true;
+    private boolean eventsEnabled = true;
+    private GameListener[] listeners = new GameListener[0];
+    private ZobristKeys zobrist;
+    private long hash;
+    // cell << 4 | recorded | formed SOS | blue moved | O, one per move
+    private int[] history;
+    private int historySize = 0;
     
     public SOSGameLogic(int size, boolean isSimple) {
         this.size = size;
         this.isSimple = isSimple;
         this.board = new char[size][size];
+        this.bits = new BitBoard(size);
+        this.threats = new ThreatMap(bits);
+        this.freeCells = new FreeCellSet(size * size);
+        this.history = new int[size * size];
+        this.zobrist = ZobristKeys.forSize(size);
+        this.hash = zobrist.initial(isSimple);
         initializeBoard();
     }
     
     protected void initializeBoard() {
+        bits.clearAll();
+        threats.clear();
+        freeCells.reset();
         for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                board[i][j] = '\0';
-            }
+            Arrays.fill(board[i], '\0');
         }
     }
     
@@ -307,23 +311,51 @@ public abstract class SOSGameLogic implements Game {
         blueScore = 0;
         redScore = 0;
         gameEnded = false;
-        lastSOSCoordinates.clear();
+        lastSOSCellCount = 0;
+        historySize = 0;
+        hash = zobrist.initial(isSimple);
         initializeBoard();
+        // the recorded moves and any journal belong to the game just cleared
+        moveRecorder.clear();
+        try {
+            moveRecorder.stopJournal();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the move journal", e);
+        }
+        if (eventsEnabled) {
+            for (GameListener listener : listeners) {
+                listener.gameReset();
+            }
+        }
     }
     
     @Override
     public boolean makeMove(int row, int col, char letter) {
-        if (gameEnded || board[row][col] != '\0') {
+        if (gameEnded || !isValidPosition(row, col) || (letter != 'S' && letter != 'O')) {
+            return false;
+        }
+
+        int cell = bits.index(row, col);
+        if (!bits.isEmpty(cell)) {
             return false;
         }
 
+        boolean completes = threats.completions(cell, letter) > 0;
+        threats.retract(cell);
+        bits.set(cell, letter);
+        threats.apply(cell);
+        freeCells.remove(row * size + col);
         board[row][col] = letter;
 
-        boolean formedSOS = checkForSOS(row, col, letter);
+        lastSOSCellCount = 0;
+        boolean formedSOS = completes && checkForSOS(row, col, letter);
+        history[historySize++] = (cell << 4) | (recording ? RECORDED : 0) | (formedSOS ? 4 : 0)
+            | (blueTurn ? 2 : 0) | (letter == 'O' ? 1 : 0);
+        hash ^= zobrist.cell(row * size + col, letter) ^ moveHashDelta(formedSOS);
 
-        String color = blueTurn ? "Blue" : "Red";
-        boolean isAI = blueTurn ? bluePlayer.isComputer() : redPlayer.isComputer();
-        moveRecorder.recordMove(row, col, color, letter, isAI);
+        if (recording) {
+            moveRecorder.record(row, col, letter, blueTurn, isCurrentPlayerComputer());
+        }
 
         if (formedSOS) {
             if (blueTurn) {
@@ -343,102 +375,290 @@ public abstract class SOSGameLogic implements Game {
             gameEnded = true;
         }
 
+        if (eventsEnabled && listeners.length > 0) {
+            fireMove(row, col, letter, formedSOS);
+        }
+
         return formedSOS;
     }
+
+    // blueTurn has already moved on, so the mover is blueTurn unless the turn
+    // passed.
+    private void fireMove(int row, int col, char letter, boolean formedSOS) {
+        boolean moverBlue = formedSOS == blueTurn;
+        List<int[]> coordinates = formedSOS ? getLastSOSCoordinates() : null;
+        for (GameListener listener : listeners) {
+            listener.cellPlaced(row, col, letter, moverBlue);
+            if (formedSOS) {
+                listener.sosFormed(coordinates, moverBlue);
+                listener.scoreChanged(blueScore, redScore);
+            } else {
+                listener.turnChanged(blueTurn);
+            }
+            if (gameEnded) {
+                listener.gameEnded(blueScore, redScore);
+            }
+        }
+    }
+
+    public void addGameListener(GameListener listener) {
+        GameListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[listeners.length] = listener;
+        listeners = grown;
+    }
+
+    public void removeGameListener(GameListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                GameListener[] shrunk = new GameListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, shrunk, 0, i);
+                System.arraycopy(listeners, i + 1, shrunk, i, shrunk.length - i);
+                listeners = shrunk;
+                return;
+            }
+        }
+    }
+    
+    public boolean undoMove() {
+        if (historySize == 0) {
+            return false;
+        }
+
+        int entry = history[--historySize];
+        int cell = entry >>> 4;
+        boolean formedSOS = (entry & 4) != 0;
+        blueTurn = (entry & 2) != 0;
+
+        int row = bits.row(cell);
+        int col = bits.col(cell);
+        threats.retract(cell);
+        bits.clear(cell);
+        threats.apply(cell);
+        freeCells.restore(row * size + col);
+        board[row][col] = '\0';
+        if ((entry & RECORDED) != 0) {
+            moveRecorder.removeLastMove();
+        }
+
+        if (formedSOS) {
+            if (blueTurn) {
+                blueScore--;
+            } else {
+                redScore--;
+            }
+        }
+        gameEnded = false;
+        hash ^= zobrist.cell(row * size + col, (entry & 1) != 0 ? 'O' : 'S') ^ moveHashDelta(formedSOS);
+
+        if (historySize == 0) {
+            lastSOSCellCount = 0;
+        } else {
+            int previous = history[historySize - 1];
+            int previousCell = previous >>> 4;
+            checkForSOS(bits.row(previousCell), bits.col(previousCell), (previous & 1) != 0 ? 'O' : 'S');
+        }
+
+        if (eventsEnabled) {
+            // An undo can reopen an ended game, so the turn is always sent.
+            for (GameListener listener : listeners) {
+                listener.cellCleared(row, col);
+                if (formedSOS) {
+                    listener.scoreChanged(blueScore, redScore);
+                }
+                listener.turnChanged(blueTurn);
+            }
+        }
+
+        return true;
+    }
+
+    // Hash change for the side to move (blueTurn before the move) either
+    // scoring one point or passing the turn.
+    private long moveHashDelta(boolean formedSOS) {
+        if (!formedSOS) {
+            return zobrist.redToMove;
+        }
+        int diff = blueScore - redScore;
+        int after = blueTurn ? diff + 1 : diff - 1;
+        return zobrist.scoreDifference(diff) ^ zobrist.scoreDifference(after);
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public int getMoveCount() {
+        return historySize;
+    }
+
+    public int getEmptyCellCount() {
+        return freeCells.size();
+    }
+
+    public int getEmptyCell(int i) {
+        return freeCells.get(i);
+    }
+
+    public int getRandomEmptyCell(Random random) {
+        return freeCells.isEmpty() ? -1 : freeCells.random(random);
+    }
     
     public Move getComputerMove() {
-        Player currentPlayer = blueTurn ? bluePlayer : redPlayer;
-        return currentPlayer.getNextMove(this);
+        return getCurrentPlayer().getNextMove(this);
+    }
+
+    public CompletableFuture<Move> getComputerMoveAsync() {
+        return getCurrentPlayer().getNextMoveAsync(this, COMPUTER_MOVE_EXECUTOR);
+    }
+
+    // Heap held by this game: the board, the recorded moves and whatever the
+    // players built so far keep between moves.
+    public long estimatedBytes() {
+        long bytes = BASE_BYTES + BYTES_PER_CELL * size * size + moveRecorder.estimatedBytes();
+        if (bluePlayer != null) {
+            bytes += bluePlayer.estimatedBytes();
+        }
+        if (redPlayer != null && redPlayer != bluePlayer) {
+            bytes += redPlayer.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    // The player whose turn it is, created on first use and kept for the
+    // rest of the game. Copies share it.
+    public Player getCurrentPlayer() {
+        if (blueTurn) {
+            if (bluePlayer == null) {
+                bluePlayer = PlayerFactory.createPlayer(bluePlayerType);
+            }
+            return bluePlayer;
+        }
+        if (redPlayer == null) {
+            redPlayer = PlayerFactory.createPlayer(redPlayerType);
+        }
+        return redPlayer;
     }
     
     public boolean wouldFormSOS(int row, int col, char letter) {
-        char originalValue = board[row][col];
-        board[row][col] = letter;
-        boolean forms = checkForSOS(row, col, letter);
-        board[row][col] = originalValue;
-        return forms;
+        return threats.completions(bits.index(row, col), letter) > 0;
+    }
+
+    public boolean wouldOpenSOS(int row, int col, char letter) {
+        return bits.opensSOS(bits.index(row, col), letter);
+    }
+
+    public int getCompletionCount(int row, int col, char letter) {
+        return threats.completions(bits.index(row, col), letter);
+    }
+
+    public int getThreatCellCount() {
+        return threats.getCellCount();
+    }
+
+    public Move findSOSMove() {
+        int found = findSOSCell();
+        if (found < 0) {
+            return null;
+        }
+        int cell = found >>> 1;
+        return new Move(cell / size, cell % size, (found & 1) == 0 ? 'S' : 'O');
+    }
+
+    // Same move as findSOSMove, as (row * size + col) << 1 | (O ? 1 : 0), or -1.
+    public int findSOSCell() {
+        int found = threats.first();
+        if (found < 0) {
+            return -1;
+        }
+        int cell = found >>> 1;
+        return ((bits.row(cell) * size + bits.col(cell)) << 1) | (found & 1);
     }
     
     protected void toggleTurn() {
         blueTurn = !blueTurn;
+        hash ^= zobrist.redToMove;
     }
     
     public SOSGameLogic createCopy() {
         SOSGameLogic copy = SOSGameLogic.createGame(size, isSimple);
         
         for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                copy.board[i][j] = this.board[i][j];
-            }
+            System.arraycopy(this.board[i], 0, copy.board[i], 0, size);
         }
+        copy.bits.copyFrom(this.bits);
+        copy.threats.copyFrom(this.threats);
+        copy.freeCells.copyFrom(this.freeCells);
         
         copy.blueTurn = this.blueTurn;
         copy.blueScore = this.blueScore;
         copy.redScore = this.redScore;
         copy.gameEnded = this.gameEnded;
+        copy.hash = this.hash;
+        copy.bluePlayerType = this.bluePlayerType;
+        copy.redPlayerType = this.redPlayerType;
         copy.bluePlayer = this.bluePlayer;
         copy.redPlayer = this.redPlayer;
+        copy.recording = false;
         
         return copy;
     }
     
+    // Unlike createCopy, also takes the move history and the last SOS, so the
+    // copy can undo and highlight exactly like the original. Both games must
+    // have the same size and mode.
+    public void copyStateFrom(SOSGameLogic other) {
+        if (other.size != size || other.isSimple != isSimple) {
+            throw new IllegalArgumentException("Cannot copy a different kind of game");
+        }
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(other.board[i], 0, board[i], 0, size);
+        }
+        bits.copyFrom(other.bits);
+        threats.copyFrom(other.threats);
+        freeCells.copyFrom(other.freeCells);
+        // this game's recorder does not hold the other game's moves
+        for (int i = 0; i < other.historySize; i++) {
+            history[i] = other.history[i] & ~RECORDED;
+        }
+        historySize = other.historySize;
+        System.arraycopy(other.lastSOSCells, 0, lastSOSCells, 0, other.lastSOSCellCount);
+        lastSOSCellCount = other.lastSOSCellCount;
+
+        blueTurn = other.blueTurn;
+        blueScore = other.blueScore;
+        redScore = other.redScore;
+        gameEnded = other.gameEnded;
+        hash = other.hash;
+    }
+    
     private boolean checkForSOS(int row, int col, char letter) {
-        lastSOSCoordinates.clear();
-        boolean formedSOS = false;
-        
-        int[][] directions = {
-            {-1, -1}, {-1, 0}, {-1, 1},
-            {0, -1},           {0, 1},
-            {1, -1},  {1, 0},  {1, 1}
-        };
-        
-        for (int[] dir : directions) {
-            int dr = dir[0];
-            int dc = dir[1];
-            
-            if (letter == 'S') {
-                int r1 = row + dr;
-                int c1 = col + dc;
-                int r2 = row + 2 * dr;
-                int c2 = col + 2 * dc;
-                
-                if (isValidPosition(r1, c1) && isValidPosition(r2, c2) && 
-                    board[r1][c1] == 'O' && board[r2][c2] == 'S') {
-                    formedSOS = true;
-                    addSOSCoordinates(row, col, r1, c1, r2, c2);
-                }
-                
-                r1 = row - dr;
-                c1 = col - dc;
-                r2 = row - 2 * dr;
-                c2 = col - 2 * dc;
-                
-                if (isValidPosition(r1, c1) && isValidPosition(r2, c2) && 
-                    board[r1][c1] == 'O' && board[r2][c2] == 'S') {
-                    formedSOS = true;
-                    addSOSCoordinates(r2, c2, r1, c1, row, col);
+        lastSOSCellCount = 0;
+
+        int cell = bits.index(row, col);
+        SOSLineTable lines = bits.lines();
+        if (letter == 'S') {
+            int[] ends = lines.ends;
+            for (int k = lines.endOffsets[cell], end = lines.endOffsets[cell + 1]; k < end; k += 2) {
+                if (bits.isO(ends[k]) && bits.isS(ends[k + 1])) {
+                    addSOSCells(cell, ends[k], ends[k + 1]);
                 }
-            } else if (letter == 'O') {
-                int rPrev = row - dr;
-                int cPrev = col - dc;
-                int rNext = row + dr;
-                int cNext = col + dc;
-                
-                if (isValidPosition(rPrev, cPrev) && isValidPosition(rNext, cNext) && 
-                    board[rPrev][cPrev] == 'S' && board[rNext][cNext] == 'S') {
-                    formedSOS = true;
-                    addSOSCoordinates(rPrev, cPrev, row, col, rNext, cNext);
+            }
+        } else if (letter == 'O') {
+            int[] middles = lines.middles;
+            for (int k = lines.middleOffsets[cell], end = lines.middleOffsets[cell + 1]; k < end; k += 2) {
+                if (bits.isS(middles[k]) && bits.isS(middles[k + 1])) {
+                    addSOSCells(middles[k], cell, middles[k + 1]);
                 }
             }
         }
-        
-        return formedSOS;
+
+        return lastSOSCellCount > 0;
     }
 
-    private void addSOSCoordinates(int r1, int c1, int r2, int c2, int r3, int c3) {
-        lastSOSCoordinates.add(new int[]{r1, c1});
-        lastSOSCoordinates.add(new int[]{r2, c2});
-        lastSOSCoordinates.add(new int[]{r3, c3});
+    private void addSOSCells(int first, int middle, int last) {
+        lastSOSCells[lastSOSCellCount++] = first;
+        lastSOSCells[lastSOSCellCount++] = middle;
+        lastSOSCells[lastSOSCellCount++] = last;
     }
 
     protected boolean isValidPosition(int row, int col) {
@@ -446,14 +666,7 @@ public abstract class SOSGameLogic implements Game {
     }
 
     private boolean isBoardFull() {
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (board[i][j] == '\0') {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return freeCells.isEmpty();
     }
 
     public static SOSGameLogic createGame(int size, boolean isSimple) {
@@ -482,9 +695,13 @@ public abstract class SOSGameLogic implements Game {
     }
     
     public List<int[]> getLastSOSCoordinates() {
-        return lastSOSCoordinates;
+        List<int[]> coordinates = new ArrayList<>(lastSOSCellCount);
+        for (int i = 0; i < lastSOSCellCount; i++) {
+            coordinates.add(new int[]{bits.row(lastSOSCells[i]), bits.col(lastSOSCells[i])});
+        }
+        return coordinates;
     }
-    
+
     public char[][] getBoard() {
         return board;
     }
@@ -494,33 +711,121 @@ public abstract class SOSGameLogic implements Game {
     }
     
     public void setBluePlayerType(PlayerType playerType) {
-        this.bluePlayer = PlayerFactory.createPlayer(playerType);
+        if (playerType != bluePlayerType) {
+            bluePlayerType = playerType;
+            bluePlayer = null;
+        }
     }
     
     public void setRedPlayerType(PlayerType playerType) {
-        this.redPlayer = PlayerFactory.createPlayer(playerType);
+        if (playerType != redPlayerType) {
+            redPlayerType = playerType;
+            redPlayer = null;
+        }
+    }
+
+    // Plays one side with the given player instead of one built from its
+    // type; the side takes the player's type.
+    void setPlayer(boolean blue, Player player) {
+        if (blue) {
+            bluePlayerType = player.getType();
+            bluePlayer = player;
+        } else {
+            redPlayerType = player.getType();
+            redPlayer = player;
+        }
     }
     
     public PlayerType getBluePlayerType() {
-        return bluePlayer.getType();
+        return bluePlayerType;
     }
     
     public PlayerType getRedPlayerType() {
-        return redPlayer.getType();
+        return redPlayerType;
     }
     
     public boolean isCurrentPlayerComputer() {
-        return blueTurn ? bluePlayer.isComputer() : redPlayer.isComputer();
+        return (blueTurn ? bluePlayerType : redPlayerType) != PlayerType.HUMAN;
+    }
+
+    // Off for copies and searches so their moves cost nothing to record.
+    // Only moves made while recording is on are saved, and undoing a move
+    // takes it out of the recorder only if it was recorded, so recording may
+    // be switched at any point without the two falling out of step.
+    public void setRecording(boolean recording) {
+        this.recording = recording;
     }
 
-    public List<String> replayMoves(String filePath) throws IOException {
+    public boolean isRecording() {
+        return recording;
+    }
+
+    // Listeners hear every move, undo and reset unless events are switched
+    // off, whether or not the moves are recorded. Searches and replays that
+    // play through moves nobody should see switch them off.
+    public void setEventsEnabled(boolean eventsEnabled) {
+        this.eventsEnabled = eventsEnabled;
+    }
+
+    public boolean areEventsEnabled() {
+        return eventsEnabled;
+    }
+
+    public Replay replayMoves(String filePath) throws IOException {
         resetGame();
         return moveRecorder.loadFromFile(filePath);
     }
 
     public void saveMoves(String filePath) throws IOException {
+        moveRecorder.setGameInfo(size, isSimple, bluePlayerType, redPlayerType);
         moveRecorder.saveToFile(filePath);
     }
+
+    // Saves the moves on the board from the undo history rather than the
+    // recorder, so replaying the file always rebuilds exactly this position.
+    public void savePosition(String filePath) throws IOException {
+        MoveRecorder position = new MoveRecorder();
+        position.setGameInfo(size, isSimple, bluePlayerType, redPlayerType);
+        for (int i = 0; i < historySize; i++) {
+            int entry = history[i];
+            int cell = entry >>> 4;
+            boolean blue = (entry & 2) != 0;
+            position.record(bits.row(cell), bits.col(cell), (entry & 1) != 0 ? 'O' : 'S', blue,
+                (blue ? bluePlayerType : redPlayerType) != PlayerType.HUMAN);
+        }
+        position.saveToFile(filePath);
+    }
+
+    // Appends each recorded move to filePath during play, writing in groups
+    // of flushEveryMoves moves or at least every flushIntervalMillis.
+    public void startJournal(String filePath, int flushEveryMoves, long flushIntervalMillis) throws IOException {
+        moveRecorder.setGameInfo(size, isSimple, bluePlayerType, redPlayerType);
+        moveRecorder.startJournal(filePath, flushEveryMoves, flushIntervalMillis);
+    }
+
+    public void stopJournal() throws IOException {
+        moveRecorder.stopJournal();
+    }
+
+    // Adds the recorded game, with its current score, to an archive and
+    // returns its id there.
+    public long archiveMoves(ReplayArchiveWriter archive) throws IOException {
+        moveRecorder.setGameInfo(size, isSimple, bluePlayerType, redPlayerType);
+        return moveRecorder.appendTo(archive, blueScore, redScore);
+    }
+
+    // The moves made while recording was on, oldest first.
+    public int getRecordedMoveCount() {
+        return moveRecorder.getMoveCount();
+    }
+
+    public RecordedMove getRecordedMove(int index) {
+        return moveRecorder.getMove(index);
+    }
+
+    public void exportMoves(String filePath) throws IOException {
+        moveRecorder.exportToText(filePath);
+    }
 }
 
 class SOSGameImpl extends SOSGameLogic {
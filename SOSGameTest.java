@@ -1,3 +1,12 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -95,6 +104,93 @@ public class SOSGameTest {
             assertTrue(generalGame.wouldFormSOS(1, 2, 'S'));
         }
 
+        @Test
+        public void testUndoMoveRestoresState() {
+            generalGame.makeMove(0, 0, 'S');
+            generalGame.makeMove(0, 1, 'O');
+            int[] before = {generalGame.getBlueScore(), generalGame.getRedScore()};
+            boolean blueBefore = generalGame.isBlueTurn();
+
+            assertTrue(generalGame.makeMove(0, 2, 'S'));
+            assertEquals(3, generalGame.getLastSOSCoordinates().size());
+            assertTrue(generalGame.undoMove());
+
+            assertEquals('\0', generalGame.getBoard()[0][2]);
+            assertEquals(before[0], generalGame.getBlueScore());
+            assertEquals(before[1], generalGame.getRedScore());
+            assertEquals(blueBefore, generalGame.isBlueTurn());
+            assertTrue(generalGame.getLastSOSCoordinates().isEmpty());
+            assertEquals(2, generalGame.getMoveCount());
+        }
+
+        @Test
+        public void testUndoMoveReopensEndedGame() {
+            simpleGame.makeMove(0, 0, 'S');
+            simpleGame.makeMove(1, 0, 'O');
+            simpleGame.makeMove(2, 0, 'S');
+            assertTrue(simpleGame.isGameEnded());
+            simpleGame.undoMove();
+            assertFalse(simpleGame.isGameEnded());
+            assertEquals(0, simpleGame.getBlueScore());
+            assertTrue(simpleGame.isBlueTurn());
+            simpleGame.undoMove();
+            simpleGame.undoMove();
+            assertFalse(simpleGame.undoMove());
+        }
+
+        @Test
+        public void testEmptyCellIndexTracksMoves() {
+            assertEquals(9, generalGame.getEmptyCellCount());
+            generalGame.makeMove(1, 1, 'S');
+            generalGame.makeMove(0, 2, 'O');
+            assertEquals(7, generalGame.getEmptyCellCount());
+            for (int i = 0; i < generalGame.getEmptyCellCount(); i++) {
+                int cell = generalGame.getEmptyCell(i);
+                assertEquals('\0', generalGame.getBoard()[cell / 3][cell % 3]);
+            }
+            generalGame.undoMove();
+            assertEquals(8, generalGame.getEmptyCellCount());
+        }
+
+        @Test
+        public void testHashIgnoresMoveOrder() {
+            SOSGameLogic other = SOSGameLogic.createGame(3, false);
+            generalGame.makeMove(0, 0, 'S');
+            generalGame.makeMove(2, 2, 'O');
+            generalGame.makeMove(1, 0, 'S');
+            other.makeMove(1, 0, 'S');
+            other.makeMove(2, 2, 'O');
+            other.makeMove(0, 0, 'S');
+            assertEquals(generalGame.getHash(), other.getHash());
+
+            long before = generalGame.getHash();
+            generalGame.makeMove(2, 0, 'O');
+            assertNotEquals(before, generalGame.getHash());
+            generalGame.undoMove();
+            assertEquals(before, generalGame.getHash());
+        }
+
+        @Test
+        public void testTranspositionTableStoresAndCounts() {
+            TranspositionTable table = new TranspositionTable(1 << 10);
+            assertEquals(64, table.getCapacity());
+            int search = table.newSearch();
+            table.store(42L, -17, 5, 3, TranspositionTable.LOWER, search);
+            table.store(42L, 8, 6, 2, TranspositionTable.EXACT, search);
+            long entry = table.probe(42L);
+            assertEquals(-17, TranspositionTable.valueOf(entry));
+            assertEquals(5, TranspositionTable.moveOf(entry));
+            assertEquals(3, TranspositionTable.depthOf(entry));
+            assertEquals(TranspositionTable.LOWER, TranspositionTable.boundOf(entry));
+            assertEquals(0L, table.probe(42L + 64));
+            assertEquals(1, table.getHits());
+            assertEquals(1, table.getMisses());
+
+            // another search may replace a deeper entry
+            table.store(42L, 8, 6, 2, TranspositionTable.EXACT, table.newSearch());
+            assertEquals(2, TranspositionTable.depthOf(table.probe(42L)));
+        }
+
         @Test
         public void testIsBoardFull() {
             for (int i = 0; i < generalGame.getSize(); i++) {
@@ -104,6 +200,162 @@ public class SOSGameTest {
             }
             assertTrue(generalGame.isGameEnded());
         }
+
+        @Test
+        public void testListenerReceivesMoveEvents() {
+            StringBuilder events = new StringBuilder();
+            GameListener listener = new GameListener() {
+                @Override
+                public void cellPlaced(int row, int col, char letter, boolean blue) {
+                    events.append("cell ").append(row).append(col).append(letter).append(blue ? 'B' : 'R').append(';');
+                }
+
+                @Override
+                public void cellCleared(int row, int col) {
+                    events.append("clear ").append(row).append(col).append(';');
+                }
+
+                @Override
+                public void sosFormed(List<int[]> coordinates, boolean blue) {
+                    events.append("sos ").append(coordinates.size()).append(';');
+                }
+
+                @Override
+                public void scoreChanged(int blueScore, int redScore) {
+                    events.append("score ").append(blueScore).append('-').append(redScore).append(';');
+                }
+
+                @Override
+                public void turnChanged(boolean blueTurn) {
+                    events.append("turn ").append(blueTurn ? 'B' : 'R').append(';');
+                }
+
+                @Override
+                public void gameEnded(int blueScore, int redScore) {
+                    events.append("end;");
+                }
+            };
+            simpleGame.addGameListener(listener);
+            simpleGame.makeMove(0, 0, 'S');
+            simpleGame.makeMove(1, 0, 'O');
+            simpleGame.makeMove(2, 0, 'S');
+            assertEquals("cell 00SB;turn R;cell 10OR;turn B;cell 20SB;sos 3;score 1-0;end;", events.toString());
+
+            events.setLength(0);
+            simpleGame.createCopy().makeMove(2, 2, 'S');
+            assertEquals("", events.toString());
+
+            simpleGame.setRecording(false);
+            simpleGame.undoMove();
+            assertEquals("clear 20;score 0-0;turn B;", events.toString());
+            events.setLength(0);
+            simpleGame.setEventsEnabled(false);
+            simpleGame.makeMove(2, 0, 'S');
+            assertEquals("", events.toString());
+
+            simpleGame.setEventsEnabled(true);
+            simpleGame.removeGameListener(listener);
+            simpleGame.undoMove();
+            assertEquals("", events.toString());
+        }
+    }
+
+    @Nested
+    class BitBoardTests {
+        @Test
+        public void testFindSOSMoveMatchesWouldFormSOS() {
+            SOSGameLogic large = SOSGameLogic.createGame(12, false);
+            large.makeMove(11, 9, 'S');
+            large.makeMove(11, 10, 'O');
+            Move move = large.findSOSMove();
+            assertNotNull(move);
+            assertEquals(11, move.row);
+            assertEquals(11, move.col);
+            assertEquals('S', move.letter);
+            assertTrue(large.wouldFormSOS(11, 11, 'S'));
+            assertFalse(large.wouldFormSOS(0, 0, 'S'));
+        }
+
+        @Test
+        public void testCompletionCountsFollowMovesAndUndo() {
+            generalGame.makeMove(0, 0, 'S');
+            generalGame.makeMove(0, 1, 'O');
+            generalGame.makeMove(1, 2, 'O');
+            generalGame.makeMove(2, 2, 'S');
+
+            assertEquals(2, generalGame.getCompletionCount(0, 2, 'S'));
+            assertEquals(1, generalGame.getCompletionCount(1, 1, 'O'));
+            assertEquals(2, generalGame.getThreatCellCount());
+            assertEquals(2 << 1, generalGame.findSOSCell());
+
+            generalGame.undoMove();
+            assertEquals(1, generalGame.getCompletionCount(0, 2, 'S'));
+            assertEquals(0, generalGame.getCompletionCount(1, 1, 'O'));
+            assertEquals(1, generalGame.getThreatCellCount());
+        }
+
+        @Test
+        public void testBatchedGamesFollowMakeMoveRules() {
+            for (boolean simple : new boolean[]{true, false}) {
+                int count = 64;
+                int size = 5;
+                BatchedGames batch = new BatchedGames(count, size, simple);
+                SOSGameLogic[] reference = new SOSGameLogic[count];
+                for (int g = 0; g < count; g++) {
+                    reference[g] = SOSGameLogic.createGame(size, simple);
+                    reference[g].setRecording(false);
+                }
+                Random random = new Random(simple ? 1 : 2);
+                int[] actions = new int[count];
+                int[] rewards = new int[count];
+                boolean[] done = new boolean[count];
+                boolean[] mask = new boolean[count * size * size];
+
+                for (int ply = 0; ply < size * size; ply++) {
+                    batch.fillLegalMask(mask);
+                    for (int g = 0; g < count; g++) {
+                        for (int cell = 0; cell < size * size; cell++) {
+                            assertEquals(!reference[g].isGameEnded()
+                                && reference[g].getBoard()[cell / size][cell % size] == '\0', mask[g * size * size + cell]);
+                        }
+                        int cell = reference[g].getRandomEmptyCell(random);
+                        actions[g] = cell < 0 ? 0 : BatchedGames.action(size, cell / size, cell % size,
+                            random.nextBoolean() ? 'S' : 'O');
+                    }
+                    batch.step(actions, rewards, done);
+                    for (int g = 0; g < count; g++) {
+                        SOSGameLogic game = reference[g];
+                        int cell = actions[g] >> 1;
+                        boolean formed = !game.isGameEnded()
+                            && game.makeMove(cell / size, cell % size, (actions[g] & 1) != 0 ? 'O' : 'S');
+                        assertEquals(formed ? 1 : 0, rewards[g]);
+                        assertEquals(game.isGameEnded(), done[g]);
+                        assertEquals(game.isBlueTurn(), batch.isBlueTurn(g));
+                        assertEquals(game.getBlueScore(), batch.getBlueScore(g));
+                        assertEquals(game.getRedScore(), batch.getRedScore(g));
+                    }
+                }
+                for (int g = 0; g < count; g++) {
+                    assertTrue(batch.isDone(g));
+                }
+            }
+        }
+
+        @Test
+        public void testBatchedGamesRefuseTakenCells() {
+            BatchedGames batch = new BatchedGames(2, 3, true);
+            int[] rewards = new int[2];
+            boolean[] done = new boolean[2];
+            int centre = BatchedGames.action(3, 1, 1, 'S');
+            assertEquals(2, batch.step(new int[]{centre, centre}, rewards, done));
+            assertEquals(1, batch.step(new int[]{centre, BatchedGames.action(3, 0, 0, 'O')}, rewards, done));
+            assertFalse(batch.isBlueTurn(0));
+            assertTrue(batch.isBlueTurn(1));
+            assertEquals('O', batch.getCell(1, 0, 0));
+            batch.reset(1);
+            assertEquals('\0', batch.getCell(1, 1, 1));
+            assertEquals('S', batch.getCell(0, 1, 1));
+        }
     }
 
     @Test
@@ -177,6 +429,58 @@ public class SOSGameTest {
             assertTrue(isCenter || isCorner);
         }
 
+        @Test
+        public void testHardComputerTakesAvailableSOS() {
+            game.setRedPlayerType(PlayerType.COMPUTER_HARD);
+
+            game.makeMove(1, 0, 'S');
+            game.makeMove(0, 0, 'S');
+            game.makeMove(1, 1, 'O');
+
+            Move move = game.getComputerMove();
+            assertNotNull(move);
+            assertTrue(game.wouldFormSOS(move.row, move.col, move.letter));
+            assertEquals(3, game.getMoveCount());
+        }
+
+        @Test
+        public void testMCTSComputerWinsSimpleGameWhenItCan() {
+            Player mcts = new MCTSComputerPlayer(2, 4000, 10000);
+            assertEquals(PlayerType.COMPUTER_MCTS, PlayerFactory.createPlayer(PlayerType.COMPUTER_MCTS).getType());
+
+            game.makeMove(1, 0, 'S');
+            game.makeMove(0, 0, 'S');
+            game.makeMove(1, 1, 'O');
+
+            Move move = mcts.getNextMove(game);
+            assertNotNull(move);
+            assertTrue(game.wouldFormSOS(move.row, move.col, move.letter));
+            assertEquals(3, game.getMoveCount());
+        }
+
+        @Test
+        public void testMCTSMovesEvenWithoutTimeForAPlayout() {
+            MonteCarloTreeSearch search = new MonteCarloTreeSearch(1, 0, 0);
+            game.makeMove(1, 0, 'S');
+            game.makeMove(0, 0, 'S');
+            game.makeMove(1, 1, 'O');
+
+            Move move = search.findBestMove(game);
+            assertNotNull(move);
+            assertTrue(game.wouldFormSOS(move.row, move.col, move.letter));
+        }
+
+        @Test
+        public void testAsyncComputerMoveUsesSnapshot() throws Exception {
+            game.setBluePlayerType(PlayerType.COMPUTER_MEDIUM);
+            CompletableFuture<Move> future = game.getComputerMoveAsync();
+            game.makeMove(0, 0, 'S');
+
+            Move move = future.get();
+            assertNotNull(move);
+            assertEquals(1, game.getMoveCount());
+        }
+
         private boolean isValidMove(Move move) {
             int row = move.row;
             int col = move.col;
@@ -185,4 +489,468 @@ public class SOSGameTest {
                    game.getBoard()[row][col] == '\0';
         }
     }
+
+    @Nested
+    class ReplayTests {
+        @Test
+        public void testBinaryReplayRoundTrip() throws IOException {
+            generalGame.setRedPlayerType(PlayerType.COMPUTER_EASY);
+            generalGame.makeMove(0, 0, 'S');
+            generalGame.makeMove(2, 1, 'O');
+            generalGame.makeMove(0, 2, 'S');
+
+            Path file = Files.createTempFile("replay", ".sos");
+            try {
+                generalGame.saveMoves(file.toString());
+                // 9-byte header, the count, then one byte per move on a 3x3 board
+                assertEquals(9 + 1 + 3, Files.size(file));
+
+                Replay replay = generalGame.replayMoves(file.toString());
+                assertEquals(3, replay.getSize());
+                assertFalse(replay.isSimpleGame());
+                assertEquals(PlayerType.HUMAN, replay.getBluePlayerType());
+                assertEquals(PlayerType.COMPUTER_EASY, replay.getRedPlayerType());
+
+                List<RecordedMove> moves = replay.getMoves();
+                assertEquals(3, moves.size());
+                assertEquals("0,0,Blue,S,Player", moves.get(0).toString());
+                assertEquals("2,1,Red,O,AI", moves.get(1).toString());
+                assertEquals("0,2,Blue,S,Player", moves.get(2).toString());
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testRecordingCanBeSwitchedOff() throws IOException {
+            generalGame.makeMove(0, 0, 'S');
+            generalGame.setRecording(false);
+            generalGame.makeMove(1, 1, 'O');
+            generalGame.undoMove();
+            assertFalse(generalGame.createCopy().isRecording());
+
+            Path file = Files.createTempFile("replay", ".txt");
+            try {
+                generalGame.exportMoves(file.toString());
+                assertEquals(List.of("0,0,Blue,S,Player"), Files.readAllLines(file, StandardCharsets.UTF_8));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testRecordingCanBeSwitchedBetweenMoveAndUndo() throws IOException {
+            generalGame.makeMove(0, 0, 'S');
+            generalGame.makeMove(1, 1, 'O');
+            generalGame.setRecording(false);
+            generalGame.undoMove();
+            generalGame.makeMove(2, 2, 'S');
+            generalGame.setRecording(true);
+            generalGame.undoMove();
+            generalGame.makeMove(0, 2, 'O');
+
+            Path file = Files.createTempFile("replay", ".txt");
+            try {
+                generalGame.exportMoves(file.toString());
+                assertEquals(List.of("0,0,Blue,S,Player", "0,2,Red,O,Player"),
+                    Files.readAllLines(file, StandardCharsets.UTF_8));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testJournalWritesInGroupsAndSurvivesTornTail() throws IOException {
+            Path file = Files.createTempFile("journal", ".sosj");
+            try {
+                generalGame.makeMove(0, 0, 'S');
+                generalGame.startJournal(file.toString(), 3, 0);
+                generalGame.makeMove(1, 1, 'O');
+                assertEquals(9, Files.size(file));
+
+                generalGame.makeMove(2, 2, 'S');
+                generalGame.undoMove();
+                assertEquals(9 + 3, Files.size(file));
+
+                generalGame.makeMove(0, 2, 'S');
+                generalGame.stopJournal();
+                Files.write(file, new byte[]{(byte) 0x80}, StandardOpenOption.APPEND);
+
+                Replay replay = new MoveRecorder().loadFromFile(file.toString());
+                assertEquals(3, replay.getSize());
+                List<RecordedMove> moves = replay.getMoves();
+                assertEquals(3, moves.size());
+                assertEquals("0,0,Blue,S,Player", moves.get(0).toString());
+                assertEquals("1,1,Red,O,Player", moves.get(1).toString());
+                assertEquals("0,2,Blue,S,Player", moves.get(2).toString());
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testArchiveRandomAccessAndScan() throws IOException {
+            Path file = Files.createTempFile("games", ".sosa");
+            try {
+                try (ReplayArchiveWriter writer = new ReplayArchiveWriter(file.toString())) {
+                    for (int g = 0; g < 3; g++) {
+                        SOSGameLogic played = SOSGameLogic.createGame(3 + g, g != 1);
+                        played.makeMove(0, 0, 'S');
+                        played.makeMove(0, 1, 'O');
+                        played.makeMove(0, 2, 'S');
+                        assertEquals(g, played.archiveMoves(writer));
+                    }
+                }
+
+                try (ReplayArchive archive = new ReplayArchive(file.toString())) {
+                    assertEquals(3, archive.getGameCount());
+                    ReplayArchive.Game game = archive.getGame(1);
+                    assertEquals(4, game.getSize());
+                    assertFalse(game.isSimpleGame());
+                    assertEquals("Blue", game.getWinner());
+                    assertEquals(1, game.getBlueScore());
+                    assertEquals("0,2,Blue,S,Player", game.getMove(2).toString());
+
+                    int[] moves = {0};
+                    archive.scan(g -> moves[0] += g.getMoveCount());
+                    assertEquals(9, moves[0]);
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testReaderStreamsFilesLargerThanItsBuffer() throws IOException {
+            Path file = Files.createTempFile("replay", ".txt");
+            try {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < 20000; i++) {
+                    text.append(i % 7).append(',').append(i % 5).append(i % 2 == 0 ? ",Blue,S,AI\r\n" : ",Red,O,Player\r\n");
+                }
+                Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+
+                try (ReplayReader reader = new ReplayReader(file.toString())) {
+                    assertEquals(20000, reader.stream().filter(m -> m.blue == (m.letter == 'S')).count());
+                }
+
+                generalGame.makeMove(1, 2, 'O');
+                generalGame.saveMoves(file.toString());
+                try (ReplayReader reader = new ReplayReader(file.toString())) {
+                    assertEquals(3, reader.getSize());
+                    assertEquals("1,2,Blue,O,Player", reader.next().toString());
+                    assertFalse(reader.hasNext());
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testReplayEngineSeeksBothWays() throws IOException {
+            SOSGameLogic played = SOSGameLogic.createGame(5, false);
+            int[][] cells = {{0, 0}, {0, 1}, {0, 2}, {1, 0}, {2, 0}, {1, 1}, {2, 2}, {4, 4}, {3, 3}, {4, 0}};
+            char[] letters = {'S', 'O', 'S', 'O', 'S', 'O', 'S', 'S', 'O', 'S'};
+            int[] blueScores = new int[cells.length + 1];
+            int[] redScores = new int[cells.length + 1];
+            for (int i = 0; i < cells.length; i++) {
+                played.makeMove(cells[i][0], cells[i][1], letters[i]);
+                blueScores[i + 1] = played.getBlueScore();
+                redScores[i + 1] = played.getRedScore();
+            }
+
+            Path file = Files.createTempFile("replay", ".sos");
+            try {
+                played.saveMoves(file.toString());
+                ReplayEngine engine = new ReplayEngine(new MoveRecorder().loadFromFile(file.toString()), 3);
+                for (int target : new int[]{10, 2, 7, 6, 0, 9, 4, 8}) {
+                    engine.seek(target);
+                    assertEquals(blueScores[target], engine.getGame().getBlueScore());
+                    assertEquals(redScores[target], engine.getGame().getRedScore());
+                }
+
+                engine.seek(10);
+                assertEquals(played.getLastSOSCoordinates().size(), engine.getGame().getLastSOSCoordinates().size());
+                assertTrue(engine.stepBackward());
+                engine.seek(3);
+                assertEquals(3, engine.getGame().getLastSOSCoordinates().size());
+                engine.seek(10);
+                assertEquals(played.getHash(), engine.getGame().getHash());
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testVerifierFindsInconsistentGames() throws Exception {
+            Path good = Files.createTempFile("good", ".txt");
+            Path bad = Files.createTempFile("bad", ".txt");
+            try {
+                Files.write(good, List.of("0,0,Blue,S,Player", "1,1,Computer,Red,O", "2,2,Blue,S,AI"), StandardCharsets.UTF_8);
+                Files.write(bad, List.of("0,0,Blue,S,Player", "1,1,Blue,O,Player"), StandardCharsets.UTF_8);
+
+                ReplayVerifier.Result result = new ReplayVerifier(2, 16).verify(List.of(good.toString(), bad.toString()));
+                assertEquals(2, result.getGames());
+                assertEquals(1, result.getInconsistentGames());
+                assertTrue(result.getProblems().get(0).contains("on Red's turn"));
+            } finally {
+                Files.deleteIfExists(good);
+                Files.deleteIfExists(bad);
+            }
+        }
+
+        @Test
+        public void testTextReplayStillImports() throws IOException {
+            Path file = Files.createTempFile("replay", ".txt");
+            try {
+                Files.write(file, List.of("1,2,Blue,O,AI", "0,0,Player,Red,S"), StandardCharsets.UTF_8);
+
+                List<RecordedMove> moves = new MoveRecorder().loadFromFile(file.toString()).getMoves();
+                assertEquals(2, moves.size());
+                assertEquals("1,2,Blue,O,AI", moves.get(0).toString());
+                assertEquals("0,0,Red,S,Player", moves.get(1).toString());
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        public void testTrainingDataReplaysSelfPlay() throws Exception {
+            Path file = Files.createTempFile("positions", ".sost");
+            try {
+                Tournament tournament = new Tournament(List.of(PlayerType.COMPUTER_EASY, PlayerType.COMPUTER_MEDIUM),
+                    3, 5, new boolean[]{true, false}, 2, 2, 1, 200, 200);
+                Tournament.Result result;
+                try (TrainingDataWriter writer = new TrainingDataWriter(file.toString(), 7)) {
+                    tournament.setTrainingData(writer);
+                    result = tournament.run();
+                    assertEquals(result.moves, writer.getPositionCount());
+                }
+
+                try (TrainingData data = new TrainingData(file.toString())) {
+                    assertEquals(result.moves, data.getPositionCount());
+                    long rows = 0;
+                    long games = 0;
+                    int chunks = 0;
+                    SOSGameLogic game = null;
+                    for (TrainingData.Chunk chunk = data.nextChunk(); chunk != null; chunk = data.nextChunk()) {
+                        chunks++;
+                        for (int i = 0; i < chunk.getRowCount(); i++, rows++) {
+                            int size = chunk.getSize(i);
+                            if (chunk.getPly(i) == 0) {
+                                game = SOSGameLogic.createGame(size, chunk.isSimpleGame(i));
+                                games++;
+                            }
+                            assertEquals(game.getMoveCount(), chunk.getPly(i));
+                            assertEquals(game.isBlueTurn(), chunk.isBlueTurn(i));
+                            assertEquals(game.getBlueScore(), chunk.getBlueScore(i));
+                            assertEquals(game.getRedScore(), chunk.getRedScore(i));
+                            for (int r = 0; r < size; r++) {
+                                for (int c = 0; c < size; c++) {
+                                    assertEquals(game.getBoard()[r][c], chunk.getCell(i, r, c));
+                                }
+                            }
+                            int cell = chunk.getMove(i) >> 1;
+                            game.makeMove(cell / size, cell % size, (chunk.getMove(i) & 1) != 0 ? 'O' : 'S');
+                            if (game.isGameEnded()) {
+                                int margin = game.getBlueScore() - game.getRedScore();
+                                assertEquals(margin, chunk.getMargin(i));
+                                assertEquals(margin > 0 ? ReplayArchive.BLUE_WON : margin < 0 ? ReplayArchive.RED_WON
+                                    : ReplayArchive.DRAW, chunk.getOutcome(i));
+                            }
+                        }
+                    }
+                    assertEquals(result.moves, rows);
+                    assertEquals(result.getGames(), games);
+                    assertEquals(data.getChunkCount(), chunks);
+                    assertTrue(chunks > 1);
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Nested
+    class ServerTests {
+        @Test
+        public void testProtocolPlaysAGame() throws IOException {
+            try (GameServer server = new GameServer(2, 16)) {
+                String id = server.handle("NEW 3 simple").substring(3);
+                assertEquals("OK 0 0 0 RED", server.handle("MOVE " + id + " 0 0 S"));
+                assertEquals("ERR illegal move", server.handle("MOVE " + id + " 0 0 O"));
+                assertEquals("OK 0 0 0 BLUE", server.handle("MOVE " + id + " 1 0 O"));
+                assertEquals("OK 1 1 0 OVER", server.handle("MOVE " + id + " 2 0 S"));
+                assertEquals("OK 1 0 OVER S..O..S..", server.handle("STATE " + id));
+                assertEquals("OK", server.handle("CLOSE " + id));
+                assertTrue(server.handle("STATE " + id).startsWith("ERR"));
+                assertTrue(server.handle("NEW 99 simple").startsWith("ERR"));
+                assertTrue(server.handle("JUMP").startsWith("ERR"));
+            }
+        }
+
+        @Test
+        public void testComputerSessionsPlayOverTcp() throws Exception {
+            try (GameServer server = new GameServer(2, 16)) {
+                int port = server.start(0);
+                String id = server.handle("NEW 4 general EASY EASY").substring(3);
+                String[] state = server.handle("WAIT " + id + " 10000").split(" ");
+                assertEquals("OVER", state[3]);
+                assertFalse(state[4].contains("."));
+
+                GameServerLoad.Result result = new GameServerLoad("localhost", port, 4, 5, 4, false,
+                    PlayerType.COMPUTER_EASY).run();
+                assertEquals(20, result.getGames());
+                assertEquals(1, server.getSessionCount());
+            }
+        }
+
+        @Test
+        public void testBroadcastResyncsSlowSpectators() throws InterruptedException {
+            SOSGameLogic featured = SOSGameLogic.createGame(3, false);
+            featured.makeMove(0, 0, 'S');
+            GameBroadcast broadcast = GameBroadcast.follow(featured, 2);
+            featured.addGameListener(broadcast);
+
+            GameBroadcast.Subscription fast = broadcast.subscribe();
+            GameBroadcast.Subscription slow = broadcast.subscribe();
+            assertEquals("S 1 3 0 0 RED S........", fast.take());
+            featured.makeMove(0, 1, 'O');
+            assertEquals("D 2 0 1 O R 0 0 BLUE", fast.take());
+            featured.makeMove(0, 2, 'S');
+            assertEquals("D 3 0 2 S B 1 0 BLUE 0,2,0,0", fast.take());
+
+            // the slow spectator never read: its queue was replaced by a snapshot
+            assertEquals(1, slow.getResyncs());
+            assertEquals("S 3 3 1 0 BLUE SoS...... 0,2,0,0,B", slow.take());
+            assertNull(slow.poll(0, TimeUnit.MILLISECONDS));
+
+            featured.undoMove();
+            assertEquals("S 4 3 0 0 BLUE So.......", fast.take());
+            slow.close();
+            assertEquals(1, broadcast.getSubscriberCount());
+            broadcast.close();
+            assertEquals("END 5", fast.take());
+        }
+
+        @Test
+        public void testWatchStreamsAComputerGame() throws Exception {
+            try (GameServer server = new GameServer(1, 16)) {
+                int port = server.start(0);
+                String id = server.handle("NEW 3 simple").substring(3);
+                server.handle("MOVE " + id + " 0 0 S");
+                try (java.net.Socket socket = new java.net.Socket("localhost", port);
+                     java.io.BufferedReader in = new java.io.BufferedReader(new java.io.InputStreamReader(
+                         socket.getInputStream(), StandardCharsets.UTF_8))) {
+                    socket.getOutputStream().write(("WATCH " + id + "\n").getBytes(StandardCharsets.UTF_8));
+                    assertEquals("OK", in.readLine());
+                    assertEquals("S 1 3 0 0 RED S........", in.readLine());
+                    server.handle("MOVE " + id + " 1 0 O");
+                    server.handle("MOVE " + id + " 2 0 S");
+                    assertEquals("D 2 1 0 O R 0 0 BLUE", in.readLine());
+                    assertEquals("D 3 2 0 S B 1 0 BLUE 2,0,0,0", in.readLine());
+                    assertEquals("E 4 1 0", in.readLine());
+                    assertNull(in.readLine());
+                }
+            }
+        }
+
+        @Test
+        public void testCacheCountsRequestsAndPlayerMemory() throws InterruptedException, IOException {
+            try (GameServer server = new GameServer(1, 16)) {
+                String id = server.handle("NEW 6 general").substring(3);
+                GameCache cache = server.getCache();
+                long hits = cache.getHits();
+                server.handle("STATE " + id);
+                assertEquals(hits + 1, cache.getHits());
+
+                long bytes = cache.getResidentBytes();
+                GameSession session = server.getSession(Long.parseLong(id));
+                session.setBluePlayerType(PlayerType.COMPUTER_HARD);
+                assertTrue(session.awaitHumanTurn(5000));
+                assertTrue(cache.getResidentBytes() > bytes + 10_000);
+                assertEquals(hits + 1, cache.getHits());
+            }
+        }
+
+        @Test
+        public void testFailedComputerTurnDoesNotStallTheSession() throws Exception {
+            try (GameServer server = new GameServer(1, 16)) {
+                String id = server.handle("NEW 3 simple").substring(3);
+                GameSession session = server.getSession(Long.parseLong(id));
+                session.setPlayer(true, new EasyComputerPlayer() {
+                    @Override
+                    public Move getNextMove(SOSGameLogic game) {
+                        throw new IllegalStateException("broken");
+                    }
+                });
+                assertEquals("ERR computer turn failed: broken", server.handle("WAIT " + id + " 5000"));
+
+                session.setBluePlayerType(PlayerType.COMPUTER_MEDIUM);
+                assertTrue(session.awaitHumanTurn(5000));
+                assertNull(session.getComputerTurnFailure());
+                assertFalse(session.isBlueTurn());
+            }
+        }
+
+        @Test
+        public void testSpillAfterLoadingAReplayKeepsTheBoard() throws IOException {
+            Path spill = Files.createTempDirectory("sos-spill");
+            Path replay = Files.createTempFile("replay", ".sos");
+            try (GameServer server = new GameServer(1, 16, 1, spill)) {
+                String id = server.handle("NEW 3 general").substring(3);
+                server.handle("MOVE " + id + " 0 0 S");
+                server.handle("MOVE " + id + " 1 1 O");
+                GameSession session = server.getSession(Long.parseLong(id));
+                session.saveMoves(replay.toString());
+                session.loadReplay(replay.toString());
+
+                assertEquals("OK 0 0 BLUE .........", server.handle("STATE " + id));
+                assertTrue(session.isSpilled());
+                assertEquals("OK 0 0 BLUE .........", server.handle("STATE " + id));
+            } finally {
+                Files.deleteIfExists(replay);
+                try (var files = Files.list(spill)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(spill);
+            }
+        }
+
+        @Test
+        public void testIdleGamesSpillToDiskAndComeBack() throws IOException {
+            Path spill = Files.createTempDirectory("sos-spill");
+            try (GameServer server = new GameServer(1, 16, 1, spill)) {
+                String first = server.handle("NEW 4 general").substring(3);
+                server.handle("MOVE " + first + " 0 0 S");
+                server.handle("MOVE " + first + " 0 1 O");
+                server.handle("MOVE " + first + " 0 2 S");
+                String state = server.handle("STATE " + first);
+                String second = server.handle("NEW 4 general").substring(3);
+
+                GameCache cache = server.getCache();
+                assertTrue(server.getSession(Long.parseLong(first)).isSpilled());
+                assertTrue(Files.exists(cache.spillFile(Long.parseLong(first))));
+                long misses = cache.getMisses();
+
+                assertEquals(state, server.handle("STATE " + first));
+                assertEquals(misses + 1, cache.getMisses());
+                assertTrue(server.getSession(Long.parseLong(second)).isSpilled());
+                assertEquals("OK 0 1 0 RED", server.handle("MOVE " + first + " 3 3 O"));
+                assertEquals("OK 2 0", server.handle("STATS").substring(0, 6));
+
+                assertEquals("OK", server.handle("CLOSE " + second));
+                assertFalse(Files.exists(cache.spillFile(Long.parseLong(second))));
+            } finally {
+                try (var files = Files.list(spill)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(spill);
+            }
+        }
+    }
 }
@@ -0,0 +1,82 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every SOS line through every cell of a board size, as BitBoard indices.
+// Built once per size and shared by all games of that size.
+//
+// ends[endOffsets[c] .. endOffsets[c + 1]) holds (middle, far end) pairs for
+// the lines where c is an S end; middles[middleOffsets[c] .. middleOffsets[c + 1])
+// holds (first, last) pairs for the lines where c is the O.
+public class SOSLineTable {
+    private static final Map<Integer, SOSLineTable> TABLES = new ConcurrentHashMap<>();
+
+    final int[] endOffsets;
+    final int[] ends;
+    final int[] middleOffsets;
+    final int[] middles;
+
+    public static SOSLineTable forSize(int size) {
+        return TABLES.computeIfAbsent(size, SOSLineTable::new);
+    }
+
+    private SOSLineTable(int size) {
+        int bits = BitBoard.bitCount(size);
+        int[][] steps = {
+            {-1, -1}, {-1, 0}, {-1, 1},
+            {0, -1},           {0, 1},
+            {1, -1},  {1, 0},  {1, 1}
+        };
+
+        endOffsets = new int[bits + 1];
+        middleOffsets = new int[bits + 1];
+        int[] endBuffer = new int[bits * 16];
+        int[] middleBuffer = new int[bits * 8];
+        int endCount = 0;
+        int middleCount = 0;
+
+        for (int index = 0; index < bits; index++) {
+            endOffsets[index] = endCount;
+            middleOffsets[index] = middleCount;
+
+            int row = BitBoard.rowOf(size, index);
+            int col = BitBoard.colOf(size, index);
+            if (row < 0 || row >= size || col < 0 || col >= size) {
+                continue;
+            }
+
+            for (int[] step : steps) {
+                int r1 = row + step[0];
+                int c1 = col + step[1];
+                int r2 = row + 2 * step[0];
+                int c2 = col + 2 * step[1];
+                if (inside(size, r2, c2)) {
+                    endBuffer[endCount++] = BitBoard.indexOf(size, r1, c1);
+                    endBuffer[endCount++] = BitBoard.indexOf(size, r2, c2);
+                }
+            }
+
+            // Forward half only, so each line through the O is listed once.
+            for (int d = 4; d < steps.length; d++) {
+                int rPrev = row - steps[d][0];
+                int cPrev = col - steps[d][1];
+                int rNext = row + steps[d][0];
+                int cNext = col + steps[d][1];
+                if (inside(size, rPrev, cPrev) && inside(size, rNext, cNext)) {
+                    middleBuffer[middleCount++] = BitBoard.indexOf(size, rPrev, cPrev);
+                    middleBuffer[middleCount++] = BitBoard.indexOf(size, rNext, cNext);
+                }
+            }
+        }
+        endOffsets[bits] = endCount;
+        middleOffsets[bits] = middleCount;
+
+        ends = new int[endCount];
+        System.arraycopy(endBuffer, 0, ends, 0, endCount);
+        middles = new int[middleCount];
+        System.arraycopy(middleBuffer, 0, middles, 0, middleCount);
+    }
+
+    private static boolean inside(int size, int row, int col) {
+        return row >= 0 && row < size && col >= 0 && col < size;
+    }
+}
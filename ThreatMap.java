@@ -0,0 +1,99 @@
+import java.util.Arrays;
+
+// Live map of the empty cells where S or O would complete an SOS, with how
+// many lines each would complete. A line contributes only when exactly one of
+// its cells is empty and the other two already hold the right letters, so a
+// change at one cell can only touch the dozen lines through it. Callers
+// retract those lines before changing the cell and apply them afterwards.
+public class ThreatMap {
+    private final BitBoard bits;
+    private final SOSLineTable lines;
+    private final int[] completeS;
+    private final int[] completeO;
+    private final long[] mask;
+    private int cellCount = 0;
+
+    public ThreatMap(BitBoard bits) {
+        this.bits = bits;
+        this.lines = bits.lines();
+        int size = BitBoard.bitCount(bits.getSize());
+        this.completeS = new int[size];
+        this.completeO = new int[size];
+        this.mask = new long[(size + 63) >>> 6];
+    }
+
+    public void clear() {
+        Arrays.fill(completeS, 0);
+        Arrays.fill(completeO, 0);
+        Arrays.fill(mask, 0L);
+        cellCount = 0;
+    }
+
+    public void copyFrom(ThreatMap other) {
+        System.arraycopy(other.completeS, 0, completeS, 0, completeS.length);
+        System.arraycopy(other.completeO, 0, completeO, 0, completeO.length);
+        System.arraycopy(other.mask, 0, mask, 0, mask.length);
+        cellCount = other.cellCount;
+    }
+
+    public void retract(int cell) {
+        update(cell, -1);
+    }
+
+    public void apply(int cell) {
+        update(cell, 1);
+    }
+
+    public int completions(int cell, char letter) {
+        return letter == 'S' ? completeS[cell] : letter == 'O' ? completeO[cell] : 0;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    // index << 1 | (O ? 1 : 0) for the first completing cell in index order,
+    // S before O, or -1 if there is none.
+    public int first() {
+        for (int w = 0; w < mask.length; w++) {
+            if (mask[w] != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(mask[w]);
+                return (index << 1) | (completeS[index] > 0 ? 0 : 1);
+            }
+        }
+        return -1;
+    }
+
+    private void update(int cell, int sign) {
+        int[] ends = lines.ends;
+        for (int k = lines.endOffsets[cell], end = lines.endOffsets[cell + 1]; k < end; k += 2) {
+            line(cell, ends[k], ends[k + 1], sign);
+        }
+        int[] middles = lines.middles;
+        for (int k = lines.middleOffsets[cell], end = lines.middleOffsets[cell + 1]; k < end; k += 2) {
+            line(middles[k], cell, middles[k + 1], sign);
+        }
+    }
+
+    private void line(int first, int middle, int last, int sign) {
+        if (bits.isO(middle)) {
+            if (bits.isS(last) && bits.isEmpty(first)) {
+                add(completeS, first, sign);
+            } else if (bits.isS(first) && bits.isEmpty(last)) {
+                add(completeS, last, sign);
+            }
+        } else if (bits.isEmpty(middle) && bits.isS(first) && bits.isS(last)) {
+            add(completeO, middle, sign);
+        }
+    }
+
+    private void add(int[] counts, int cell, int sign) {
+        boolean wasThreat = completeS[cell] + completeO[cell] > 0;
+        counts[cell] += sign;
+        boolean isThreat = completeS[cell] + completeO[cell] > 0;
+        if (wasThreat != isThreat) {
+            mask[cell >>> 6] ^= 1L << cell;
+            cellCount += isThreat ? 1 : -1;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Headless self-play between computer players, no Swing involved. Every
+// ordered pairing of the chosen players is played on every chosen board size
+// and mode, alternating colours. Games are split into batches run on a fixed
+// pool; each batch owns its players, games and counters. Only a few batches
+// per thread are submitted at a time and each result is merged on the
+// calling thread as it finishes, so memory does not grow with the number of
+// games. Workers share nothing but the Hard players' transposition table,
+// the optional replay archive and the optional training data file.
+//
+// java Tournament [--games N] [--players EASY,MEDIUM,HARD] [--sizes 3-12]
+//                 [--modes simple,general] [--threads N] [--batch N]
+//                 [--hard-nodes N] [--mcts-playouts N] [--archive FILE]
+//                 [--training FILE]
+public class Tournament {
+    private static final long UNLIMITED_MILLIS = 3_600_000L;
+
+    private final List<PlayerType> players;
+    private final int minSize;
+    private final int maxSize;
+    private final boolean[] modes;
+    private final long gamesPerPairing;
+    private final int threads;
+    private final int batchSize;
+    private final long hardNodes;
+    private final long mctsPlayouts;
+    private ReplayArchiveWriter archive;
+    private TrainingDataWriter trainingData;
+
+    public Tournament(List<PlayerType> players, int minSize, int maxSize, boolean[] modes,
+                      long gamesPerPairing, int threads, int batchSize, long hardNodes, long mctsPlayouts) {
+        this.players = players;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.modes = modes;
+        this.gamesPerPairing = gamesPerPairing;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.hardNodes = hardNodes;
+        this.mctsPlayouts = mctsPlayouts;
+    }
+
+    // Every finished game is added to the archive when one is set.
+    public void setArchive(ReplayArchiveWriter archive) {
+        this.archive = archive;
+    }
+
+    // Every position of every finished game is added when a writer is set.
+    public void setTrainingData(TrainingDataWriter trainingData) {
+        this.trainingData = trainingData;
+    }
+
+    public Result run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<Result> batches = new ExecutorCompletionService<>(pool);
+        int maxInFlight = threads * 2;
+        int inFlight = 0;
+        Result total = new Result();
+        long start = System.nanoTime();
+        try {
+            for (PlayerType first : players) {
+                for (PlayerType second : players) {
+                    for (int size = minSize; size <= maxSize; size++) {
+                        for (boolean simple : modes) {
+                            for (long played = 0; played < gamesPerPairing; played += batchSize) {
+                                if (inFlight == maxInFlight) {
+                                    merge(total, batches.take());
+                                    inFlight--;
+                                }
+                                Pairing pairing = new Pairing(first, second, size, simple);
+                                int games = (int) Math.min(batchSize, gamesPerPairing - played);
+                                batches.submit(() -> playBatch(pairing, games));
+                                inFlight++;
+                            }
+                        }
+                    }
+                }
+            }
+            for (; inFlight > 0; inFlight--) {
+                merge(total, batches.take());
+            }
+            total.elapsedNanos = System.nanoTime() - start;
+            return total;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void merge(Result total, Future<Result> batch) throws InterruptedException {
+        try {
+            total.merge(batch.get());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Result playBatch(Pairing pairing, int games) {
+        Result result = new Result();
+        Player first = createPlayer(pairing.first);
+        Player second = createPlayer(pairing.second);
+        PairingStats stats = result.pairing(pairing);
+        LatencyHistogram firstLatency = result.latency(pairing.first);
+        LatencyHistogram secondLatency = result.latency(pairing.second);
+        TrainingDataWriter.Positions positions = trainingData == null ? null : new TrainingDataWriter.Positions();
+
+        for (int g = 0; g < games; g++) {
+            boolean firstBlue = g % 2 == 0;
+            SOSGameLogic game = SOSGameLogic.createGame(pairing.size, pairing.simple);
+            game.setRecording(archive != null);
+            // only tags the sides for the archive; the game never builds
+            // players of its own, the batch's players choose every move
+            game.setBluePlayerType(firstBlue ? pairing.first : pairing.second);
+            game.setRedPlayerType(firstBlue ? pairing.second : pairing.first);
+            if (positions != null) {
+                positions.start(pairing.size, pairing.simple);
+            }
+
+            while (!game.isGameEnded()) {
+                boolean firstToMove = game.isBlueTurn() == firstBlue;
+                Player mover = firstToMove ? first : second;
+                long begin = System.nanoTime();
+                Move move = mover.getNextMove(game);
+                (firstToMove ? firstLatency : secondLatency).record(System.nanoTime() - begin);
+                if (move == null || !game.isValidPosition(move.row, move.col)
+                        || game.getBoard()[move.row][move.col] != '\0') {
+                    throw new IllegalStateException(mover.getType() + " returned an illegal move");
+                }
+                if (positions != null) {
+                    positions.add(game, move);
+                }
+                game.makeMove(move.row, move.col, move.letter);
+                result.moves++;
+            }
+
+            int firstScore = firstBlue ? game.getBlueScore() : game.getRedScore();
+            int secondScore = firstBlue ? game.getRedScore() : game.getBlueScore();
+            stats.record(firstScore, secondScore);
+            result.games++;
+            if (archive != null) {
+                try {
+                    game.archiveMoves(archive);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            if (positions != null) {
+                try {
+                    trainingData.append(positions, game.getBlueScore(), game.getRedScore());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Player createPlayer(PlayerType type) {
+        switch (type) {
+            case COMPUTER_HARD:
+                return new HardComputerPlayer(UNLIMITED_MILLIS, hardNodes);
+            case COMPUTER_MCTS:
+                return new MCTSComputerPlayer(1, mctsPlayouts, UNLIMITED_MILLIS);
+            default:
+                return PlayerFactory.createPlayer(type);
+        }
+    }
+
+    static final class Pairing implements Comparable<Pairing> {
+        final PlayerType first;
+        final PlayerType second;
+        final int size;
+        final boolean simple;
+
+        Pairing(PlayerType first, PlayerType second, int size, boolean simple) {
+            this.first = first;
+            this.second = second;
+            this.size = size;
+            this.simple = simple;
+        }
+
+        @Override
+        public int compareTo(Pairing other) {
+            if (first != other.first) {
+                return first.compareTo(other.first);
+            }
+            if (second != other.second) {
+                return second.compareTo(other.second);
+            }
+            if (size != other.size) {
+                return Integer.compare(size, other.size);
+            }
+            return Boolean.compare(other.simple, simple);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Pairing && compareTo((Pairing) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((first.ordinal() * 31 + second.ordinal()) * 31 + size) * 2 + (simple ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-15s vs %-15s %2dx%-2d %-7s",
+                first, second, size, size, simple ? "simple" : "general");
+        }
+    }
+
+    static final class PairingStats {
+        long games;
+        long firstWins;
+        long secondWins;
+        long draws;
+        long firstScore;
+        long secondScore;
+
+        void record(int first, int second) {
+            games++;
+            firstScore += first;
+            secondScore += second;
+            if (first > second) {
+                firstWins++;
+            } else if (second > first) {
+                secondWins++;
+            } else {
+                draws++;
+            }
+        }
+
+        void merge(PairingStats other) {
+            games += other.games;
+            firstWins += other.firstWins;
+            secondWins += other.secondWins;
+            draws += other.draws;
+            firstScore += other.firstScore;
+            secondScore += other.secondScore;
+        }
+    }
+
+    // Log-linear histogram of nanosecond latencies: 32 sub-buckets per power
+    // of two, so percentiles are within about 3% of the true value.
+    static final class LatencyHistogram {
+        private static final int SUB_BITS = 5;
+        private final long[] counts = new long[64 << SUB_BITS];
+        private long total;
+        private long max;
+
+        void record(long nanos) {
+            long value = Math.max(1, nanos);
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int bucket = exponent < SUB_BITS
+                ? (int) value
+                : (exponent - SUB_BITS + 1 << SUB_BITS) + (int) ((value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1));
+            counts[bucket]++;
+            total++;
+            max = Math.max(max, nanos);
+        }
+
+        long percentile(double p) {
+            long rank = (long) Math.ceil(p / 100.0 * total);
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank && counts[bucket] > 0) {
+                    return lowerBound(bucket);
+                }
+            }
+            return max;
+        }
+
+        private static long lowerBound(int bucket) {
+            if (bucket < 1 << SUB_BITS) {
+                return bucket;
+            }
+            int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+            long mantissa = bucket & ((1 << SUB_BITS) - 1);
+            return (1L << exponent) | (mantissa << (exponent - SUB_BITS));
+        }
+
+        void merge(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            max = Math.max(max, other.max);
+        }
+    }
+
+    public static final class Result {
+        final Map<Pairing, PairingStats> pairings = new TreeMap<>();
+        final Map<PlayerType, LatencyHistogram> latencies = new TreeMap<>();
+        long games;
+        long moves;
+        long elapsedNanos;
+
+        PairingStats pairing(Pairing pairing) {
+            return pairings.computeIfAbsent(pairing, p -> new PairingStats());
+        }
+
+        LatencyHistogram latency(PlayerType type) {
+            return latencies.computeIfAbsent(type, t -> new LatencyHistogram());
+        }
+
+        void merge(Result other) {
+            other.pairings.forEach((p, s) -> pairing(p).merge(s));
+            other.latencies.forEach((t, h) -> latency(t).merge(h));
+            games += other.games;
+            moves += other.moves;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public void print() {
+            System.out.println("pairing                                               games   1st win   2nd win      draw  avg 1st  avg 2nd");
+            for (Map.Entry<Pairing, PairingStats> entry : pairings.entrySet()) {
+                PairingStats s = entry.getValue();
+                System.out.printf(Locale.ROOT, "%s %9d %8.2f%% %8.2f%% %8.2f%% %8.2f %8.2f%n",
+                    entry.getKey(), s.games,
+                    100.0 * s.firstWins / s.games, 100.0 * s.secondWins / s.games, 100.0 * s.draws / s.games,
+                    (double) s.firstScore / s.games, (double) s.secondScore / s.games);
+            }
+
+            System.out.println();
+            System.out.println("player             moves     p50 us     p90 us     p99 us     max us");
+            for (Map.Entry<PlayerType, LatencyHistogram> entry : latencies.entrySet()) {
+                LatencyHistogram h = entry.getValue();
+                System.out.printf(Locale.ROOT, "%-15s %9d %10.1f %10.1f %10.1f %10.1f%n",
+                    entry.getKey(), h.total, h.percentile(50) / 1e3, h.percentile(90) / 1e3,
+                    h.percentile(99) / 1e3, h.max / 1e3);
+            }
+
+            double seconds = elapsedNanos / 1e9;
+            System.out.println();
+            System.out.printf(Locale.ROOT, "%d games, %d moves in %.2f s: %.0f games/s, %.0f moves/s%n",
+                games, moves, seconds, games / seconds, moves / seconds);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        List<PlayerType> players = List.of(PlayerType.COMPUTER_EASY, PlayerType.COMPUTER_MEDIUM, PlayerType.COMPUTER_HARD);
+        int minSize = 3;
+        int maxSize = 12;
+        boolean[] modes = {true, false};
+        long games = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = 64;
+        long hardNodes = 2000;
+        long mctsPlayouts = 2000;
+        String archivePath = null;
+        String trainingPath = null;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--games":
+                    games = Long.parseLong(value);
+                    break;
+                case "--players":
+                    List<PlayerType> parsed = new ArrayList<>();
+                    for (String name : value.split(",")) {
+                        String upper = name.trim().toUpperCase(Locale.ROOT);
+                        parsed.add(PlayerType.valueOf(upper.startsWith("COMPUTER_") ? upper : "COMPUTER_" + upper));
+                    }
+                    players = parsed;
+                    break;
+                case "--sizes":
+                    String[] range = value.split("-");
+                    minSize = Integer.parseInt(range[0]);
+                    maxSize = Integer.parseInt(range[range.length - 1]);
+                    break;
+                case "--modes":
+                    modes = value.equals("simple") ? new boolean[]{true}
+                        : value.equals("general") ? new boolean[]{false}
+                        : new boolean[]{true, false};
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(value);
+                    break;
+                case "--hard-nodes":
+                    hardNodes = Long.parseLong(value);
+                    break;
+                case "--mcts-playouts":
+                    mctsPlayouts = Long.parseLong(value);
+                    break;
+                case "--archive":
+                    archivePath = value;
+                    break;
+                case "--training":
+                    trainingPath = value;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        Tournament tournament = new Tournament(players, minSize, maxSize, modes, games, threads, batch, hardNodes, mctsPlayouts);
+        try (ReplayArchiveWriter writer = archivePath == null ? null : new ReplayArchiveWriter(archivePath);
+             TrainingDataWriter training = trainingPath == null ? null : new TrainingDataWriter(trainingPath)) {
+            tournament.setArchive(writer);
+            tournament.setTrainingData(training);
+            tournament.run().print();
+            if (writer != null) {
+                System.out.println(writer.getGameCount() + " games archived to " + archivePath);
+            }
+            if (training != null) {
+                System.out.println(training.getPositionCount() + " positions written to " + trainingPath);
+            }
+        }
+    }
+}
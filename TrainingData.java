@@ -0,0 +1,211 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Self-play positions written by TrainingDataWriter, one row per position
+// with the move that was played from it, stored column by column in chunks:
+//
+//   header   "SOST", version (int), position count (long), chunk count (int),
+//            padding to 32 bytes
+//   chunks   row count (int), bytes that follow in this chunk (int), then
+//            each column for every row of the chunk in turn:
+//              size        1 byte
+//              flags       1 byte, bit 0 simple, bit 1 blue to move
+//              ply         2 bytes, moves played before this position
+//              blue score  2 bytes
+//              red score   2 bytes
+//              move        2 bytes, (row * size + col) << 1 | isO
+//              outcome     1 byte, the ReplayArchive winner code
+//              margin      2 bytes, final blue score minus final red score
+//              board       (size * size + 3) / 4 bytes per row, 2 bits per
+//                          cell row by row from the low bits: 0 empty, 1 S, 2 O
+//
+// Numbers are big-endian. The rows of a game are contiguous and start at ply
+// 0, though a game may continue into the next chunk. Chunks are read one at a
+// time, so a file never needs to fit in memory; a file whose writer was not
+// closed has no counts in its header and is read up to its last whole chunk.
+public class TrainingData implements Closeable {
+    static final byte[] MAGIC = {'S', 'O', 'S', 'T'};
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int CHUNK_HEADER_BYTES = 8;
+    static final int MAX_SIZE = 64;
+    // size, flags, ply, blue score, red score, move, outcome, margin
+    static final int FIXED_ROW_BYTES = 1 + 1 + 2 + 2 + 2 + 2 + 1 + 2;
+    static final int EMPTY = 0;
+    static final int S = 1;
+    static final int O = 2;
+
+    private final FileChannel channel;
+    private final long positionCount;
+    private final int chunkCount;
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_BYTES);
+    private long offset = HEADER_BYTES;
+
+    public TrainingData(String filePath) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(header, 0);
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            if (header.remaining() < HEADER_BYTES) {
+                throw new IOException("Not a training data file: " + filePath);
+            }
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a training data file: " + filePath);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported training data version " + version);
+            }
+            this.positionCount = header.getLong();
+            this.chunkCount = header.getInt();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static int boardBytes(int size) {
+        return (size * size + 3) / 4;
+    }
+
+    // Zero if the writer was not closed.
+    public long getPositionCount() {
+        return positionCount;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    // The next chunk in file order, or null after the last one.
+    public Chunk nextChunk() throws IOException {
+        chunkHeader.clear();
+        if (readFully(chunkHeader, offset) < CHUNK_HEADER_BYTES) {
+            return null;
+        }
+        chunkHeader.flip();
+        int rows = chunkHeader.getInt();
+        int bytes = chunkHeader.getInt();
+        if (rows <= 0 || bytes < rows * FIXED_ROW_BYTES) {
+            throw new IOException("Corrupt chunk at " + offset);
+        }
+        ByteBuffer data = ByteBuffer.allocate(bytes);
+        if (readFully(data, offset + CHUNK_HEADER_BYTES) < bytes) {
+            // cut short by a writer that never closed
+            return null;
+        }
+        offset += CHUNK_HEADER_BYTES + bytes;
+        return new Chunk(rows, data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int readFully(ByteBuffer buffer, long at) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, at + read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    public static final class Chunk {
+        private final int rows;
+        private final ByteBuffer data;
+        private final int flags;
+        private final int ply;
+        private final int blueScore;
+        private final int redScore;
+        private final int move;
+        private final int outcome;
+        private final int margin;
+        private final int[] boardOffsets;
+
+        Chunk(int rows, ByteBuffer data) throws IOException {
+            this.rows = rows;
+            this.data = data;
+            this.flags = rows;
+            this.ply = flags + rows;
+            this.blueScore = ply + 2 * rows;
+            this.redScore = blueScore + 2 * rows;
+            this.move = redScore + 2 * rows;
+            this.outcome = move + 2 * rows;
+            this.margin = outcome + rows;
+            this.boardOffsets = new int[rows + 1];
+            boardOffsets[0] = margin + 2 * rows;
+            for (int i = 0; i < rows; i++) {
+                int size = getSize(i);
+                if (size < 1 || size > MAX_SIZE) {
+                    throw new IOException("Corrupt board size " + size);
+                }
+                boardOffsets[i + 1] = boardOffsets[i] + boardBytes(size);
+            }
+            if (boardOffsets[rows] != data.capacity()) {
+                throw new IOException("Corrupt chunk: boards do not fill it");
+            }
+        }
+
+        public int getRowCount() {
+            return rows;
+        }
+
+        public int getSize(int row) {
+            return data.get(row) & 0xFF;
+        }
+
+        public boolean isSimpleGame(int row) {
+            return (data.get(flags + row) & 1) != 0;
+        }
+
+        public boolean isBlueTurn(int row) {
+            return (data.get(flags + row) & 2) != 0;
+        }
+
+        public int getPly(int row) {
+            return data.getShort(ply + 2 * row) & 0xFFFF;
+        }
+
+        public int getBlueScore(int row) {
+            return data.getShort(blueScore + 2 * row) & 0xFFFF;
+        }
+
+        public int getRedScore(int row) {
+            return data.getShort(redScore + 2 * row) & 0xFFFF;
+        }
+
+        // (row * size + col) << 1 | isO, as in BatchedGames.action.
+        public int getMove(int row) {
+            return data.getShort(move + 2 * row) & 0xFFFF;
+        }
+
+        // ReplayArchive.DRAW, BLUE_WON or RED_WON.
+        public int getOutcome(int row) {
+            return data.get(outcome + row);
+        }
+
+        public int getMargin(int row) {
+            return data.getShort(margin + 2 * row);
+        }
+
+        // 'S', 'O' or '\0', as in SOSGameLogic.getBoard().
+        public char getCell(int row, int boardRow, int boardCol) {
+            int cell = boardRow * getSize(row) + boardCol;
+            int value = (data.get(boardOffsets[row] + (cell >> 2)) >>> ((cell & 3) << 1)) & 3;
+            return value == S ? 'S' : value == O ? 'O' : '\0';
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Writes a TrainingData file. A game's positions are collected in a
+// Positions buffer owned by the thread playing it and appended once the
+// outcome is known; appends are synchronized so tournament workers can share
+// one writer. Rows go into one buffer per column and are written out as a
+// chunk whenever a buffer fills, so memory stays at one chunk however many
+// positions the file ends up holding. The counts in the header are filled in
+// by close().
+public class TrainingDataWriter implements Closeable {
+    public static final int DEFAULT_CHUNK_ROWS = 1 << 16;
+    // board bytes reserved per row; chunks of larger boards hold fewer rows
+    private static final int BOARD_BYTES_PER_ROW = TrainingData.boardBytes(12);
+
+    private final FileChannel channel;
+    private final int chunkRows;
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(TrainingData.CHUNK_HEADER_BYTES);
+    private final ByteBuffer size;
+    private final ByteBuffer flags;
+    private final ByteBuffer ply;
+    private final ByteBuffer blueScore;
+    private final ByteBuffer redScore;
+    private final ByteBuffer move;
+    private final ByteBuffer outcome;
+    private final ByteBuffer margin;
+    private final ByteBuffer board;
+    private final ByteBuffer[] columns;
+    private int rows = 0;
+    private long positionCount = 0;
+    private int chunkCount = 0;
+    private boolean closed = false;
+
+    public TrainingDataWriter(String filePath) throws IOException {
+        this(filePath, DEFAULT_CHUNK_ROWS);
+    }
+
+    public TrainingDataWriter(String filePath, int chunkRows) throws IOException {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("A chunk needs at least one row");
+        }
+        this.chunkRows = chunkRows;
+        this.size = ByteBuffer.allocate(chunkRows);
+        this.flags = ByteBuffer.allocate(chunkRows);
+        this.ply = ByteBuffer.allocate(2 * chunkRows);
+        this.blueScore = ByteBuffer.allocate(2 * chunkRows);
+        this.redScore = ByteBuffer.allocate(2 * chunkRows);
+        this.move = ByteBuffer.allocate(2 * chunkRows);
+        this.outcome = ByteBuffer.allocate(chunkRows);
+        this.margin = ByteBuffer.allocate(2 * chunkRows);
+        this.board = ByteBuffer.allocate(Math.max(chunkRows * BOARD_BYTES_PER_ROW,
+            TrainingData.boardBytes(TrainingData.MAX_SIZE)));
+        this.columns = new ByteBuffer[]{chunkHeader, size, flags, ply, blueScore, redScore, move, outcome, margin, board};
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeHeader();
+            channel.position(TrainingData.HEADER_BYTES);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Adds every position of a finished game, labelled with its final score.
+    public synchronized void append(Positions game, int finalBlueScore, int finalRedScore) throws IOException {
+        if (closed) {
+            throw new IOException("Training data is closed");
+        }
+        int winner = finalBlueScore > finalRedScore ? ReplayArchive.BLUE_WON
+            : finalRedScore > finalBlueScore ? ReplayArchive.RED_WON
+            : ReplayArchive.DRAW;
+        int bytes = TrainingData.boardBytes(game.size);
+        for (int i = 0; i < game.count; i++) {
+            if (rows == chunkRows || board.remaining() < bytes) {
+                flush();
+            }
+            size.put((byte) game.size);
+            flags.put((byte) ((game.simple ? 1 : 0) | (game.blueTurn[i] ? 2 : 0)));
+            ply.putShort((short) i);
+            blueScore.putShort((short) game.blueScore[i]);
+            redScore.putShort((short) game.redScore[i]);
+            move.putShort((short) game.moves[i]);
+            outcome.put((byte) winner);
+            margin.putShort((short) (finalBlueScore - finalRedScore));
+            board.put(game.boards, i * bytes, bytes);
+            rows++;
+        }
+        positionCount += game.count;
+    }
+
+    public synchronized long getPositionCount() {
+        return positionCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            channel.force(false);
+            writeHeader();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        int bytes = 0;
+        for (int i = 1; i < columns.length; i++) {
+            bytes += columns[i].position();
+        }
+        chunkHeader.clear();
+        chunkHeader.putInt(rows).putInt(bytes);
+        long remaining = TrainingData.CHUNK_HEADER_BYTES + bytes;
+        for (ByteBuffer column : columns) {
+            column.flip();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(columns);
+        }
+        for (ByteBuffer column : columns) {
+            column.clear();
+        }
+        rows = 0;
+        chunkCount++;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(TrainingData.HEADER_BYTES);
+        header.put(TrainingData.MAGIC);
+        header.putInt(TrainingData.VERSION);
+        header.putLong(positionCount);
+        header.putInt(chunkCount);
+        header.position(header.capacity());
+        header.flip();
+        long at = 0;
+        while (header.hasRemaining()) {
+            at += channel.write(header, at);
+        }
+    }
+
+    // The positions of one game in progress, reused from game to game.
+    public static final class Positions {
+        private int size;
+        private boolean simple;
+        private int count;
+        private byte[] boards = new byte[0];
+        private boolean[] blueTurn = new boolean[0];
+        private int[] blueScore = new int[0];
+        private int[] redScore = new int[0];
+        private int[] moves = new int[0];
+
+        public void start(int size, boolean simple) {
+            if (size < 1 || size > TrainingData.MAX_SIZE) {
+                throw new IllegalArgumentException("Board size " + size + " cannot be exported");
+            }
+            this.size = size;
+            this.simple = simple;
+            this.count = 0;
+            int cells = size * size;
+            if (moves.length < cells) {
+                boards = new byte[cells * TrainingData.boardBytes(size)];
+                blueTurn = new boolean[cells];
+                blueScore = new int[cells];
+                redScore = new int[cells];
+                moves = new int[cells];
+            }
+        }
+
+        // Records the game as it stands, before move is played.
+        public void add(SOSGameLogic game, Move move) {
+            if (count == size * size) {
+                throw new IllegalStateException("More moves than cells");
+            }
+            int bytes = TrainingData.boardBytes(size);
+            int start = count * bytes;
+            Arrays.fill(boards, start, start + bytes, (byte) 0);
+            char[][] board = game.getBoard();
+            for (int row = 0, cell = 0; row < size; row++) {
+                for (int col = 0; col < size; col++, cell++) {
+                    char letter = board[row][col];
+                    if (letter != '\0') {
+                        int value = letter == 'S' ? TrainingData.S : TrainingData.O;
+                        boards[start + (cell >> 2)] |= (byte) (value << ((cell & 3) << 1));
+                    }
+                }
+            }
+            blueTurn[count] = game.isBlueTurn();
+            blueScore[count] = game.getBlueScore();
+            redScore[count] = game.getRedScore();
+            moves[count] = (move.row * size + move.col) << 1 | (move.letter == 'O' ? 1 : 0);
+            count++;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
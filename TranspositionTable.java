@@ -0,0 +1,121 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-size transposition table on a flat long[], two longs per slot: the
+// key XOR the data, then the data. A torn write from another thread leaves a
+// slot whose halves no longer XOR back to the key, so it reads as a miss and
+// no locking is needed. Every search takes its own generation from
+// newSearch() and passes it to store(), so searches sharing the table never
+// change each other's. A slot is replaced when it belongs to another search
+// or the new entry is searched at least as deep.
+//
+// Data layout, low to high: value (32 bits), move + 1 (20 bits), depth (8 bits),
+// bound (2 bits), generation (2 bits).
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    private static final long DEFAULT_BYTES = 16L << 20;
+    private static TranspositionTable shared;
+
+    private final long[] slots;
+    private final int mask;
+    private final AtomicInteger searches = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    public TranspositionTable(long memoryBytes) {
+        long entries = Math.max(1, memoryBytes / 16);
+        int capacity = Integer.highestOneBit((int) Math.min(entries, 1 << 28));
+        this.slots = new long[capacity * 2];
+        this.mask = capacity - 1;
+    }
+
+    public static synchronized TranspositionTable shared() {
+        if (shared == null) {
+            shared = new TranspositionTable(DEFAULT_BYTES);
+        }
+        return shared;
+    }
+
+    // Returns the raw data word for key, or 0 when there is no usable entry
+    // (a stored entry always has a non-zero move field).
+    public long probe(long key) {
+        int slot = ((int) key & mask) << 1;
+        long data = slots[slot + 1];
+        if ((slots[slot] ^ data) == key && data != 0) {
+            hits.increment();
+            return data;
+        }
+        misses.increment();
+        return 0;
+    }
+
+    public void store(long key, int value, int move, int depth, int bound, int generation) {
+        int slot = ((int) key & mask) << 1;
+        long old = slots[slot + 1];
+        if (old != 0 && generationOf(old) == generation && depthOf(old) > depth) {
+            return;
+        }
+
+        long data = (value & 0xFFFFFFFFL)
+            | ((long) ((move + 1) & 0xFFFFF) << 32)
+            | ((long) Math.min(depth, 255) << 52)
+            | ((long) bound << 60)
+            | ((long) generation << 62);
+        slots[slot] = key ^ data;
+        slots[slot + 1] = data;
+        stores.increment();
+    }
+
+    // The generation for a new search's stores.
+    public int newSearch() {
+        return searches.incrementAndGet() & 3;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0L);
+        hits.reset();
+        misses.reset();
+        stores.reset();
+    }
+
+    public static int valueOf(long data) {
+        return (int) data;
+    }
+
+    public static int moveOf(long data) {
+        return (int) ((data >>> 32) & 0xFFFFF) - 1;
+    }
+
+    public static int depthOf(long data) {
+        return (int) ((data >>> 52) & 0xFF);
+    }
+
+    public static int boundOf(long data) {
+        return (int) ((data >>> 60) & 3);
+    }
+
+    private static int generationOf(long data) {
+        return (int) (data >>> 62);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Random keys for hashing SOS positions of one board size: one per
+// (cell, letter), one for red to move, one per blue-minus-red score
+// difference and one for simple games. Seeded per size so hashes are stable
+// across runs.
+public class ZobristKeys {
+    private static final Map<Integer, ZobristKeys> KEYS = new ConcurrentHashMap<>();
+
+    private final long[] cellKeys;
+    private final long[] scoreKeys;
+    private final int scoreOffset;
+    final long redToMove;
+    final long simpleGame;
+
+    public static ZobristKeys forSize(int size) {
+        return KEYS.computeIfAbsent(size, ZobristKeys::new);
+    }
+
+    private ZobristKeys(int size) {
+        Random random = new Random(0x5057L * 31 + size);
+        int cells = size * size;
+        cellKeys = new long[cells * 2];
+        for (int i = 0; i < cellKeys.length; i++) {
+            cellKeys[i] = random.nextLong();
+        }
+        scoreOffset = cells;
+        scoreKeys = new long[cells * 2 + 1];
+        for (int i = 0; i < scoreKeys.length; i++) {
+            scoreKeys[i] = random.nextLong();
+        }
+        redToMove = random.nextLong();
+        simpleGame = random.nextLong();
+    }
+
+    public long cell(int cell, char letter) {
+        return cellKeys[(cell << 1) | (letter == 'O' ? 1 : 0)];
+    }
+
+    public long scoreDifference(int blueMinusRed) {
+        return scoreKeys[blueMinusRed + scoreOffset];
+    }
+
+    public long initial(boolean isSimple) {
+        return scoreDifference(0) ^ (isSimple ? simpleGame : 0L);
+    }
+}
@@ -0,0 +1,104 @@
+package sos;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Plays the same fixed random games to the end in lock step, once with
+// BatchedGames and once with one SOSGameLogic per game, so the two costs per
+// ply can be compared directly.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+    @Param({"1024", "16384"})
+    public int games;
+
+    @Param({"6", "12"})
+    public int size;
+
+    @Param({"simple", "general"})
+    public String mode;
+
+    private BatchedGames batch;
+    private SOSGameLogic[] objects;
+    // actions[ply][game]: each game's board cells in a shuffled order
+    private int[][] actions;
+    private int[] rewards;
+    private boolean[] done;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean simple = "simple".equals(mode);
+        int cells = size * size;
+        batch = new BatchedGames(games, size, simple);
+        objects = new SOSGameLogic[games];
+        actions = new int[cells][games];
+        rewards = new int[games];
+        done = new boolean[games];
+
+        Random random = new Random(31L * size + games);
+        int[] order = new int[cells];
+        for (int g = 0; g < games; g++) {
+            objects[g] = SOSGameLogic.createGame(size, simple);
+            objects[g].setRecording(false);
+            for (int i = 0; i < cells; i++) {
+                order[i] = i;
+            }
+            for (int i = cells - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            for (int ply = 0; ply < cells; ply++) {
+                actions[ply][g] = order[ply] << 1 | (random.nextBoolean() ? 1 : 0);
+            }
+        }
+    }
+
+    @Benchmark
+    public int batched() {
+        batch.resetAll();
+        int scored = 0;
+        for (int[] ply : actions) {
+            batch.step(ply, rewards, done);
+            for (int reward : rewards) {
+                scored += reward;
+            }
+        }
+        return scored;
+    }
+
+    @Benchmark
+    public int objectPerGame() {
+        int scored = 0;
+        for (SOSGameLogic game : objects) {
+            game.resetGame();
+        }
+        for (int[] ply : actions) {
+            for (int g = 0; g < games; g++) {
+                SOSGameLogic game = objects[g];
+                int cell = ply[g] >> 1;
+                if (!game.isGameEnded() && game.makeMove(cell / size, cell % size, (ply[g] & 1) != 0 ? 'O' : 'S')) {
+                    scored++;
+                }
+            }
+        }
+        return scored;
+    }
+}
@@ -0,0 +1,88 @@
+package sos;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    @Param({"3", "6", "12", "16"})
+    public int size;
+
+    @Param({"simple", "general"})
+    public String mode;
+
+    @Param({"early", "mid", "late"})
+    public String phase;
+
+    private SOSGameLogic game;
+    private int[] moves;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        game = Positions.create(size, mode, phase, 449L * size);
+        // measure the engine, not the move recorder
+        game.setRecording(false);
+        int empty = game.getEmptyCellCount();
+        moves = new int[empty * 2];
+        for (int i = 0; i < empty; i++) {
+            int cell = game.getEmptyCell(i);
+            moves[2 * i] = cell << 1;
+            moves[2 * i + 1] = (cell << 1) | 1;
+        }
+    }
+
+    // Cycles through every legal move, so moves that complete an SOS (and run
+    // the line check) are included in proportion to how common they are.
+    @Benchmark
+    public boolean makeAndUndoMove() {
+        int move = moves[next];
+        next = next + 1 == moves.length ? 0 : next + 1;
+        int cell = move >>> 1;
+        boolean formed = game.makeMove(cell / size, cell % size, (move & 1) == 0 ? 'S' : 'O');
+        game.undoMove();
+        return formed;
+    }
+
+    @Benchmark
+    public int wouldFormSOSAllCells() {
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                if (game.wouldFormSOS(row, col, 'S')) {
+                    count++;
+                }
+                if (game.wouldFormSOS(row, col, 'O')) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public Move findSOSMove() {
+        return game.findSOSMove();
+    }
+
+    @Benchmark
+    public SOSGameLogic createCopy() {
+        return game.createCopy();
+    }
+}
@@ -0,0 +1,81 @@
+package sos;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Hard and MCTS run on node and playout budgets so the work per call does not
+// depend on the wall clock.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayerBenchmark {
+    private static final long HARD_NODES = 2000;
+    private static final long MCTS_PLAYOUTS = 500;
+    private static final long UNLIMITED_MILLIS = 3_600_000L;
+
+    @Param({"EASY", "MEDIUM", "HARD", "MCTS"})
+    public String player;
+
+    @Param({"3", "6", "12", "16"})
+    public int size;
+
+    @Param({"simple", "general"})
+    public String mode;
+
+    @Param({"early", "mid", "late"})
+    public String phase;
+
+    private SOSGameLogic game;
+    private Player computer;
+    private TranspositionTable table;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        game = Positions.create(size, mode, phase, 449L * size);
+        switch (player) {
+            case "EASY":
+                computer = new EasyComputerPlayer();
+                break;
+            case "MEDIUM":
+                computer = new MediumComputerPlayer();
+                break;
+            case "HARD":
+                table = new TranspositionTable(1L << 20);
+                computer = new HardComputerPlayer(UNLIMITED_MILLIS, HARD_NODES, table);
+                break;
+            case "MCTS":
+                computer = new MCTSComputerPlayer(1, MCTS_PLAYOUTS, UNLIMITED_MILLIS);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown player " + player);
+        }
+    }
+
+    // Every call searches from a cold table, as the first move of a game
+    // would; otherwise later calls only measure cache hits.
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        if (table != null) {
+            table.clear();
+        }
+    }
+
+    @Benchmark
+    public Move getNextMove() {
+        return computer.getNextMove(game);
+    }
+}
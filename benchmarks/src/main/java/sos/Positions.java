@@ -0,0 +1,45 @@
+package sos;
+
+import java.util.Random;
+
+// Reproducible benchmark positions: a fixed-seed random game stopped once the
+// given share of the board is filled. Moves that would complete an SOS are
+// avoided where possible so simple games do not end before the target.
+final class Positions {
+    private Positions() {
+    }
+
+    static double fill(String phase) {
+        switch (phase) {
+            case "early":
+                return 0.1;
+            case "mid":
+                return 0.5;
+            case "late":
+                return 0.85;
+            default:
+                throw new IllegalArgumentException("Unknown phase " + phase);
+        }
+    }
+
+    static SOSGameLogic create(int size, String mode, String phase, long seed) {
+        SOSGameLogic game = SOSGameLogic.createGame(size, "simple".equals(mode));
+        Random random = new Random(seed);
+        int target = (int) (size * size * fill(phase));
+
+        while (game.getMoveCount() < target && !game.isGameEnded()) {
+            int cell = game.getRandomEmptyCell(random);
+            int row = cell / size;
+            int col = cell % size;
+            char letter = random.nextBoolean() ? 'S' : 'O';
+            if (game.wouldFormSOS(row, col, letter)) {
+                letter = letter == 'S' ? 'O' : 'S';
+            }
+            if (game.wouldFormSOS(row, col, letter) && game.getEmptyCellCount() > 1) {
+                continue;
+            }
+            game.makeMove(row, col, letter);
+        }
+        return game;
+    }
+}